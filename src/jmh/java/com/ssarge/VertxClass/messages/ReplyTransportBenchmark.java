@@ -0,0 +1,67 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A page of products crossing the event bus: the legacy json string reply, encoded by registerConsumer and parsed
+ * back and mapped by the router, against the binary reply codec used for typed commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplyTransportBenchmark {
+
+    @Param({"1", "30", "1000", "100000"})
+    public int size;
+
+    private final ProductReplyCodec codec = new ProductReplyCodec();
+    private ProductReply reply;
+
+    @Setup
+    public void setUp() {
+        List<Product> products = IntStream.range(0, size)
+                .mapToObj(i -> Product.builder()
+                        .id(String.format("%024x", i))
+                        .number(Integer.toString(i))
+                        .description("Product description " + i)
+                        .build())
+                .collect(Collectors.toList());
+        reply = ProductReply.of(products);
+    }
+
+    @Benchmark
+    public List<Product> jsonString() {
+        String body = reply.toJson().toString();
+        JsonArray resultList = new JsonObject(body).getJsonArray("products");
+        return resultList.stream()
+                .map(obj -> new JsonObject(obj.toString()))
+                .map(obj -> obj.mapTo(Product.class))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Product> binaryCodec() {
+        Buffer buffer = Buffer.buffer();
+        codec.encodeToWire(buffer, reply);
+        return codec.decodeFromWire(0, buffer).getProducts();
+    }
+}
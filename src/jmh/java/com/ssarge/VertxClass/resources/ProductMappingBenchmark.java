@@ -0,0 +1,60 @@
+package com.ssarge.VertxClass.resources;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Mongo document -> Product mapping done for every result of a find: the field by field copy in MongoManager against
+ * going through Jackson with mapTo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductMappingBenchmark {
+
+    @Param({"1", "30", "1000", "100000"})
+    public int size;
+
+    private List<JsonObject> documents;
+
+    @Setup
+    public void setUp() {
+        documents = IntStream.range(0, size)
+                .mapToObj(i -> new JsonObject()
+                        .put("_id", String.format("%024x", i))
+                        .put("number", Integer.toString(i))
+                        .put("description", "Product description " + i))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Product> toProduct() {
+        return documents.stream().map(MongoManager::toProduct).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Product> mapTo() {
+        return documents.stream()
+                .map(document -> {
+                    JsonObject copy = document.copy();
+                    return copy.put("id", copy.remove("_id")).mapTo(Product.class);
+                })
+                .collect(Collectors.toList());
+    }
+}
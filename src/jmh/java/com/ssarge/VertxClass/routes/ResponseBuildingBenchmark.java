@@ -0,0 +1,64 @@
+package com.ssarge.VertxClass.routes;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Response body for a page of products: the old JsonObject tree pretty printed to a String and encoded to bytes, as
+ * end(String) does, against JsonWriter streaming into the response buffer (compact, and pretty as with ?pretty=true).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBuildingBenchmark {
+
+    @Param({"1", "30", "1000", "100000"})
+    public int size;
+
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        products = IntStream.range(0, size)
+                .mapToObj(i -> Product.builder()
+                        .id(String.format("%024x", i))
+                        .number(Integer.toString(i))
+                        .description("Product description " + i)
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Buffer encodePrettily() {
+        return Buffer.buffer(Json.encodePrettily(new JsonObject().put("products", new JsonArray(products))));
+    }
+
+    @Benchmark
+    public Buffer jsonWriterCompact() {
+        return JsonWriter.page(products, null, false);
+    }
+
+    @Benchmark
+    public Buffer jsonWriterPretty() {
+        return JsonWriter.page(products, null, true);
+    }
+}
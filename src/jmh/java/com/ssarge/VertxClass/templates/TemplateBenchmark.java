@@ -0,0 +1,59 @@
+package com.ssarge.VertxClass.templates;
+
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Token substitution for a page with {@code size} occurrences of a token: the old replace loop that ApiVerticle ran
+ * on every /yo.html request, against rendering the precompiled template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+
+    @Param({"1", "30", "1000", "100000"})
+    public int size;
+
+    private final Map<String, String> values = Collections.singletonMap("name", "Bubba");
+    private String source;
+    private Template template;
+
+    @Setup
+    public void setUp() {
+        StringBuilder page = new StringBuilder("<html>\n<head><title>BasicWebVerticle</title></head>\n<body>\n");
+        for (int i = 0; i < size; i++) {
+            page.append("<h3>My name is {name}</h3>\n");
+        }
+        source = page.append("</body>\n</html>\n").toString();
+        template = Template.compile(source);
+    }
+
+    @Benchmark
+    public String replaceAllTokens() {
+        String output = source;
+        while (output.contains("{name}")) {
+            output = output.replace("{name}", values.get("name"));
+        }
+        return output;
+    }
+
+    @Benchmark
+    public Buffer render() {
+        return template.render(values);
+    }
+}
@@ -1,72 +1,121 @@
 package com.ssarge.VertxClass;
 
+import com.ssarge.VertxClass.metrics.Meters;
 import com.ssarge.VertxClass.routes.ProductRouteHandler;
 import com.ssarge.VertxClass.routes.RouteHandler;
+import com.ssarge.VertxClass.templates.Templates;
+import com.ssarge.VertxClass.web.StaticFiles;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.core.*;
+import io.vertx.core.http.Http2Settings;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.core.net.PemKeyCertOptions;
 import io.vertx.ext.web.Cookie;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.CookieHandler;
-import io.vertx.ext.web.handler.StaticHandler;
+import io.vertx.micrometer.PrometheusScrapingHandler;
 
-import java.io.File;
-import java.io.IOException;
-import java.net.URL;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Scanner;
 
 
 public class ApiVerticle extends AbstractVerticle {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ApiVerticle.class);
 
-    private final List<RouteHandler> routeHandlerList;
-
+    private List<RouteHandler> routeHandlerList;
+    private Templates templates;
     private Integer port;
     private String passPhrase;
 
     public static void main(String[] args) {
 
-        VertxOptions vertxOptions = new VertxOptions();
+        // the transport is fixed when Vert.x is created, so the config is read first with a throwaway instance
+        Vertx bootstrap = Vertx.vertx();
+        ConfigRetriever.create(bootstrap)
+                .getConfig(config -> {
+                    bootstrap.close();
+                    if (config.succeeded()) {
+                        LOGGER.info("Config options found");
+                        deploy(config.result());
+                    } else {
+                        LOGGER.error("No config options found. Deployment failed");
+                    }
+                });
+
+    }
+
+    private static void deploy(JsonObject config) {
+        VertxOptions vertxOptions = vertxOptions(config);
         vertxOptions.getEventBusOptions().setClustered(true);
         Vertx.clusteredVertx(vertxOptions, result -> {
             if (result.succeeded()) {
                 Vertx vertx = result.result();
-                ApiVerticle apiVerticle = new ApiVerticle(new ProductRouteHandler(vertx));
-                ConfigRetriever.create(vertx)
-                        .getConfig(config -> {
-                            if (config.succeeded()) {
-                                LOGGER.info("Config options found");
-                                DeploymentOptions options = new DeploymentOptions().setConfig(config.result());
-                                vertx.deployVerticle(apiVerticle, options);
-                            } else {
-                                LOGGER.error("No config options found. Deployment failed");
-                            }
-                        });
+                logTransport(vertx, vertxOptions);
+                int instances = config.getInteger("http.instances", Runtime.getRuntime().availableProcessors());
+                DeploymentOptions options = new DeploymentOptions().setConfig(config).setInstances(instances);
+                vertx.deployVerticle(ApiVerticle.class.getName(), options, deployed -> {
+                    if (deployed.succeeded()) {
+                        LOGGER.info("Deployed " + instances + " ApiVerticle instance(s)");
+                    } else {
+                        LOGGER.error("ApiVerticle deployment failed", deployed.cause());
+                    }
+                });
             }
         });
+    }
 
+    /**
+     * Options for a Vert.x instance serving the api: transport, metrics and (a JVM wide setting) h2c.
+     */
+    static VertxOptions vertxOptions(JsonObject config) {
+        if (!config.getBoolean("http.h2c.enabled", true)) {
+            // vert.x 3.8 serves h2c on every cleartext listener unless this is set before the servers are created
+            System.setProperty("vertx.disableH2c", "true");
+        }
+        return new VertxOptions()
+                .setPreferNativeTransport(config.getBoolean("vertx.preferNativeTransport", false))
+                .setMetricsOptions(Meters.options(config, null));
     }
 
-    private ApiVerticle(RouteHandler... routes) {
+    static void logTransport(Vertx vertx, VertxOptions vertxOptions) {
+        if (vertx.isNativeTransportEnabled()) {
+            LOGGER.info("Native transport loaded");
+        } else if (vertxOptions.getPreferNativeTransport()) {
+            LOGGER.warn("Native transport requested but not available, using NIO", unavailableNativeTransportCause());
+        }
+    }
+
+    private static Throwable unavailableNativeTransportCause() {
+        try {
+            return (Throwable) Class.forName("io.netty.channel.epoll.Epoll").getMethod("unavailabilityCause").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError exc) {
+            return exc;
+        }
+    }
+
+    /**
+     * Deployed by class name, once per instance; each instance builds its own route handlers and router in start.
+     */
+    public ApiVerticle() {
         super();
-        routeHandlerList = Arrays.asList(routes);
     }
 
     @Override
-    public void start(){
+    public void start(Promise<Void> startPromise){
         intitialize();
+        routeHandlerList = Collections.singletonList(new ProductRouteHandler(vertx, config()));
 
         LOGGER.info("starting AppVerticle");
 
@@ -76,74 +125,80 @@ public class ApiVerticle extends AbstractVerticle {
 
         routeHandlerList.forEach(subRoute -> router.mountSubRouter("/api/", subRoute.initializeRouter()));
 
-        router.get("/yo.html").handler(context -> {
-
-            String name = Optional.ofNullable(context.getCookie("name"))
-                    .map(Cookie::getValue)
-                    .orElseGet(() -> {
-                        // Not quite pure, but does the trick
-                        String fakeName = "Bubba";
-                        Cookie cookie = Cookie.cookie("name", fakeName);
-                        cookie.setPath("/");
-                        cookie.setMaxAge(Duration.of(1, ChronoUnit.DAYS).getSeconds() * 365);
-                        context.addCookie(cookie);
-                        return fakeName;
-                    });
-
-            ClassLoader cl = getClass().getClassLoader();
-            File file = Optional.ofNullable(cl.getResource("webroot/yo.html"))
-                    .map(URL::getFile)
-                    .map(File::new)
-                    .orElse(null);
-
-            String mappedHTML = "";
-
-            Scanner scanner = null;
-            try {
-                StringBuilder sb = new StringBuilder();
-
-                if (file != null) {
-                    scanner = new Scanner(file);
-
-                    while (scanner.hasNextLine()) {
-                        String line = scanner.nextLine();
-                        sb.append(line).append("\n");
-                    }
-
-                    mappedHTML = sb.toString();
+        if (Meters.enabled()) {
+            router.get("/metrics").handler(PrometheusScrapingHandler.create());
+        }
 
-                    mappedHTML = replaceAllTokens(mappedHTML, "{name}", name);
-                }
+        templates = Templates.fromConfig(vertx, config());
+        router.get("/yo.html").handler(templates.handler("yo.html", this::yoValues));
 
+        StaticFiles staticFiles = new StaticFiles(vertx, config());
+        staticFiles.mount(router);
 
-            } catch (IOException exc) {
-                LOGGER.error(exc.getMessage(), exc);
-            } finally {
-                Optional.ofNullable(scanner).ifPresent(Scanner::close);
+        templates.load(Collections.singletonList("yo.html"), loaded -> {
+            if (loaded.failed()) {
+                LOGGER.error("Failed to load templates: " + loaded.cause().getMessage(), loaded.cause());
             }
 
-            context.response().putHeader("content-type", "text/html").end(mappedHTML);
-
-        });
-
-        router.route().handler(StaticHandler.create().setCachingEnabled(false));
-
-        HttpServerOptions serverOptions = new HttpServerOptions()
-                .setCompressionSupported(true)
-                .setLogActivity(true);
-        vertx.createHttpServer(serverOptions).requestHandler(router).listen(port, result -> {
-            if (result.succeeded()) {
-                System.out.println("Server started on port " + port.toString());
-            } else {
-                System.err.println("Problems occurred trying to startup server on port " +
-                        port.toString() + ". Cause: " + result.cause().getMessage());
+            boolean compression = config().getBoolean("http.compression.enabled", true);
+            if (compression && staticFiles.isCacheEnabled()) {
+                LOGGER.warn("http.compression.enabled is on, static files are streamed instead of using sendfile");
             }
+            HttpServerOptions serverOptions = serverOptions(config())
+                    .setCompressionSupported(compression);
+            vertx.createHttpServer(serverOptions).requestHandler(router).listen(port, result -> {
+                if (result.succeeded()) {
+                    LOGGER.info("Server started on port " + port);
+                    startPromise.complete();
+                } else {
+                    LOGGER.error("Problems occurred trying to startup server on port " + port, result.cause());
+                    startPromise.fail(result.cause());
+                }
+            });
         });
     }
 
     @Override
     public void stop(){
         LOGGER.info("stopping AppVerticle");
+        Optional.ofNullable(templates).ifPresent(Templates::close);
+    }
+
+    /**
+     * TCP settings for the listener. Fast open, quick ack and reuse port only take effect on the native transport.
+     * Instances in one Vert.x already share a single bound socket, so reuse port only matters for separate processes
+     * listening on the same port.
+     * <p>
+     * HTTP/2 settings apply to cleartext connections (upgrade or prior knowledge) and, when {@code http.ssl.enabled}
+     * is set, to TLS connections negotiating h2.
+     */
+    static HttpServerOptions serverOptions(JsonObject config) {
+        HttpServerOptions options = new HttpServerOptions()
+                .setLogActivity(config.getBoolean("http.logActivity", true))
+                .setTcpNoDelay(config.getBoolean("http.tcpNoDelay", true))
+                .setTcpFastOpen(config.getBoolean("http.tcpFastOpen", false))
+                .setTcpQuickAck(config.getBoolean("http.tcpQuickAck", false))
+                .setReusePort(config.getBoolean("http.reusePort", false))
+                .setAcceptBacklog(config.getInteger("http.acceptBacklog", NetServerOptions.DEFAULT_ACCEPT_BACKLOG))
+                .setIdleTimeout(config.getInteger("http.idleTimeoutSeconds", NetServerOptions.DEFAULT_IDLE_TIMEOUT))
+                .setInitialSettings(new Http2Settings()
+                        .setMaxConcurrentStreams(config.getLong("http2.maxConcurrentStreams",
+                                HttpServerOptions.DEFAULT_INITIAL_SETTINGS_MAX_CONCURRENT_STREAMS))
+                        .setInitialWindowSize(config.getInteger("http2.initialWindowSize",
+                                Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE))
+                        .setHeaderTableSize(config.getLong("http2.headerTableSize",
+                                Http2Settings.DEFAULT_HEADER_TABLE_SIZE)))
+                .setHttp2ConnectionWindowSize(config.getInteger("http2.connectionWindowSize",
+                        HttpServerOptions.DEFAULT_HTTP2_CONNECTION_WINDOW_SIZE));
+        if (config.getBoolean("http.ssl.enabled", false)) {
+            // h2 is negotiated with ALPN, clients that only offer http/1.1 keep using it
+            options.setSsl(true)
+                    .setUseAlpn(true)
+                    .setPemKeyCertOptions(new PemKeyCertOptions()
+                            .setKeyPath(config.getString("http.ssl.keyPath"))
+                            .setCertPath(config.getString("http.ssl.certPath")));
+        }
+        return options;
     }
 
     private void defaultRouteProcessor(RoutingContext routingContext) {
@@ -167,13 +222,18 @@ public class ApiVerticle extends AbstractVerticle {
                 .orElseThrow(() -> new IllegalStateException("server.passphrase not set properly in config"));
     }
 
-    @SuppressWarnings("SameParameterValue")
-    private String replaceAllTokens(String source, String token, String replacement) {
-
-        String output = source;
-        while (output.contains(token)) {
-            output = output.replace(token, replacement);
-        }
-        return output;
+    private Map<String, String> yoValues(RoutingContext context) {
+        String name = Optional.ofNullable(context.getCookie("name"))
+                .map(Cookie::getValue)
+                .orElseGet(() -> {
+                    // Not quite pure, but does the trick
+                    String fakeName = "Bubba";
+                    Cookie cookie = Cookie.cookie("name", fakeName);
+                    cookie.setPath("/");
+                    cookie.setMaxAge(Duration.of(1, ChronoUnit.DAYS).getSeconds() * 365);
+                    context.addCookie(cookie);
+                    return fakeName;
+                });
+        return Collections.singletonMap("name", name);
     }
 }
@@ -4,9 +4,18 @@ public final class AppConstants {
 
     private AppConstants(){}
 
+    public static final String MONGO_SERVICE = "com.ssarge.mongoservice";
+    public static final String MONGO_BREAKER = "com.ssarge.mongoservice.breaker";
+    public static final String PRODUCT_INVALIDATION = "com.ssarge.products.invalidate";
+
     public static final String GET_ALL_PRODUCTS = "get_all_products";
     public static final String GET_PRODUCT = "get_product";
+    public static final String GET_PRODUCT_BY_NUMBER = "get_product_by_number";
     public static final String UPDATE_PRODUCT = "update_product";
     public static final String DELETE_PRODUCT = "delete_product";
     public static final String CREATE_PRODUCT = "create_product";
+    public static final String BULK_CREATE_PRODUCTS = "bulk_create_products";
+    public static final String STREAM_PRODUCTS = "stream_products";
+    public static final String STREAM_NEXT = "stream_next";
+    public static final String STREAM_CANCEL = "stream_cancel";
 }
@@ -0,0 +1,82 @@
+package com.ssarge.VertxClass;
+
+import io.vertx.config.ConfigRetriever;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * Runs MongoDBVerticle and ApiVerticle in one Vert.x instance, for hosts that would otherwise run both mains side by
+ * side. Sets {@code eventbus.local} [true]: the mongo verticles register local consumers only, and the api sends
+ * them its commands in process (no cluster lookup, serialization or TCP), going through the cluster only when no
+ * local consumer is there.
+ * <p>
+ * Still joins the cluster, for cache invalidations, the shared product cache and breaker states, unless
+ * {@code combined.clustered} is false.
+ */
+public class CombinedLauncher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CombinedLauncher.class);
+
+    public static void main(String[] args) {
+
+        // metrics and the transport are set up when Vert.x is created, so the config is read first with a throwaway instance
+        Vertx bootstrap = Vertx.vertx();
+        ConfigRetriever.create(bootstrap)
+                .getConfig(config -> {
+                    bootstrap.close();
+                    if (config.succeeded()) {
+                        LOGGER.info("Config options found");
+                        deploy(config.result().put("eventbus.local", config.result().getBoolean("eventbus.local", true)));
+                    } else {
+                        LOGGER.error("No config options found. Deployment failed");
+                    }
+                });
+
+    }
+
+    private static void deploy(JsonObject config) {
+        VertxOptions vertxOptions = ApiVerticle.vertxOptions(config);
+        Handler<AsyncResult<Vertx>> created = result -> {
+            if (result.succeeded()) {
+                Vertx vertx = result.result();
+                ApiVerticle.logTransport(vertx, vertxOptions);
+                // the mongo consumers first, so the api's first requests find them
+                deployInstances(vertx, MongoDBVerticle.class.getName(), config, "mongodb.instances")
+                        .compose(mongo -> deployInstances(vertx, ApiVerticle.class.getName(), config, "http.instances"))
+                        .setHandler(deployed -> {
+                            if (deployed.failed()) {
+                                LOGGER.error("Combined deployment failed", deployed.cause());
+                            }
+                        });
+            } else {
+                LOGGER.error("Unable to start Vert.x", result.cause());
+            }
+        };
+        if (config.getBoolean("combined.clustered", true)) {
+            vertxOptions.getEventBusOptions().setClustered(true);
+            Vertx.clusteredVertx(vertxOptions, created);
+        } else {
+            created.handle(Future.succeededFuture(Vertx.vertx(vertxOptions)));
+        }
+    }
+
+    private static Future<String> deployInstances(Vertx vertx, String verticle, JsonObject config, String instancesKey) {
+        int instances = config.getInteger(instancesKey, Runtime.getRuntime().availableProcessors());
+        Promise<String> deployed = Promise.promise();
+        vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config).setInstances(instances), result -> {
+            if (result.succeeded()) {
+                LOGGER.info("Deployed " + instances + " " + verticle + " instance(s)");
+            }
+            deployed.handle(result);
+        });
+        return deployed.future();
+    }
+}
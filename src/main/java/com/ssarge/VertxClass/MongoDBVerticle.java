@@ -1,6 +1,8 @@
 package com.ssarge.VertxClass;
 
+import com.ssarge.VertxClass.metrics.Meters;
 import com.ssarge.VertxClass.resources.MongoManager;
+import com.ssarge.VertxClass.resources.ProductIndexes;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.DeploymentOptions;
@@ -20,24 +22,40 @@ public class MongoDBVerticle extends AbstractVerticle {
     private MongoClient mongoClient;
 
     public static void main(String[] args) {
-        VertxOptions vertxOptions = new VertxOptions();
+
+        // metrics are set up when Vert.x is created, so the config is read first with a throwaway instance
+        Vertx bootstrap = Vertx.vertx();
+        ConfigRetriever.create(bootstrap)
+                .getConfig(config -> {
+                    bootstrap.close();
+                    if (config.succeeded()) {
+                        LOGGER.info("Config options found");
+                        deploy(config.result());
+                    } else {
+                        LOGGER.error("No config options found. Deployment failed");
+                    }
+                });
+
+    }
+
+    private static void deploy(JsonObject config) {
+        VertxOptions vertxOptions = new VertxOptions()
+                .setMetricsOptions(Meters.options(config, "mongodb.metrics.port"));
         vertxOptions.getEventBusOptions().setClustered(true);
         Vertx.clusteredVertx(vertxOptions, result -> {
             if (result.succeeded()) {
                 Vertx vertx = result.result();
-                ConfigRetriever.create(vertx)
-                        .getConfig(config -> {
-                            if (config.succeeded()) {
-                                LOGGER.info("Config options found");
-                                DeploymentOptions options = new DeploymentOptions().setConfig(config.result());
-                                vertx.deployVerticle(new MongoDBVerticle(), options);
-                            } else {
-                                LOGGER.error("No config options found. Deployment failed");
-                            }
-                        });
+                int instances = config.getInteger("mongodb.instances", Runtime.getRuntime().availableProcessors());
+                DeploymentOptions options = new DeploymentOptions().setConfig(config).setInstances(instances);
+                vertx.deployVerticle(MongoDBVerticle.class.getName(), options, deployed -> {
+                    if (deployed.succeeded()) {
+                        LOGGER.info("Deployed " + instances + " MongoDBVerticle instance(s)");
+                    } else {
+                        LOGGER.error("MongoDBVerticle deployment failed", deployed.cause());
+                    }
+                });
             }
         });
-
     }
 
     @Override
@@ -45,6 +63,37 @@ public class MongoDBVerticle extends AbstractVerticle {
         LOGGER.info("MongoDB Verticle Starting");
 
         JsonObject config = config();
+        mongoClient = mongoClient(config);
+
+        // commands are served meanwhile; lookups still work without the indexes, only slower
+        ProductIndexes.ensure(mongoClient, indexed -> {
+            if (indexed.failed()) {
+                LOGGER.error("Unable to create the product indexes", indexed.cause());
+            }
+        });
+        MongoManager mongoManager = new MongoManager(mongoClient, config);
+        mongoManager.registerConsumer(vertx);
+    }
+
+    /**
+     * The client named by {@code mongodb.clientClass}, constructed with the Vert.x instance and the config (e.g. the
+     * in-memory client from the test sources the load test runs on); otherwise a shared client connected to MongoDB.
+     */
+    private MongoClient mongoClient(JsonObject config) {
+        String clientClass = config.getString("mongodb.clientClass");
+        if (clientClass == null) {
+            return MongoClient.createShared(vertx, mongoOptions(config));
+        }
+        try {
+            return Class.forName(clientClass).asSubclass(MongoClient.class)
+                    .getConstructor(Vertx.class, JsonObject.class)
+                    .newInstance(vertx, config);
+        } catch (ReflectiveOperationException | ClassCastException exc) {
+            throw new IllegalStateException("Unable to create mongodb.clientClass " + clientClass, exc);
+        }
+    }
+
+    private static JsonObject mongoOptions(JsonObject config) {
         String connectionString = String.format("mongodb://%s:%d/%s",
                 config.getString("mongodb.host"), config.getInteger("mongodb.port"),
                 config.getString("mongodb.databasename"));
@@ -60,11 +109,7 @@ public class MongoDBVerticle extends AbstractVerticle {
                 .ifPresent(pass -> options.put("password", pass));
         Optional.ofNullable(config.getString("mongodb.authSource", null))
                 .ifPresent(auth -> options.put("authSource", auth));
-
-        mongoClient = MongoClient.createShared(vertx, options);
-
-        MongoManager mongoManager = new MongoManager(mongoClient);
-        mongoManager.registerConsumer(vertx);
+        return options;
     }
 
     @Override
@@ -0,0 +1,89 @@
+package com.ssarge.VertxClass.admission;
+
+import com.ssarge.VertxClass.metrics.Meters;
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Optional;
+
+/**
+ * Admission control for requests from the api to the mongo service. Reads and writes draw on separate budgets, so a
+ * flood of reads can't leave writes waiting; requests over budget are meant to be turned away at once rather than
+ * queue up behind a slow database.
+ * <p>
+ * One instance per Vert.x instance, shared by every ApiVerticle, so the limits hold for the whole process. The
+ * limits are reported as {@code http.admission.limit} and {@code http.admission.inflight} gauges and rejections are
+ * counted in {@code http.admission.rejected}, each tagged with the budget.
+ */
+public final class Admission implements Shareable {
+
+    private static final String SHARED = "com.ssarge.admission";
+
+    private final ConcurrencyLimiter reads;
+    private final ConcurrencyLimiter writes;
+    private final long readTimeoutMs;
+    private final long writeTimeoutMs;
+    private final long retryAfterSeconds;
+
+    Admission(JsonObject config) {
+        boolean enabled = config.getBoolean("http.admission.enabled", true);
+        this.reads = new ConcurrencyLimiter(enabled ? Limit.fromConfig(config, "reads", 256) : new FixedLimit(0));
+        this.writes = new ConcurrencyLimiter(enabled ? Limit.fromConfig(config, "writes", 64) : new FixedLimit(0));
+        this.readTimeoutMs = config.getLong("http.eventbus.readTimeoutMs", 5_000L);
+        this.writeTimeoutMs = config.getLong("http.eventbus.writeTimeoutMs", 10_000L);
+        this.retryAfterSeconds = config.getLong("http.admission.retryAfterSeconds", 1L);
+    }
+
+    /**
+     * The instance for this Vert.x, created from the first caller's config. Reads config keys
+     * {@code http.admission.enabled} [true], {@code http.admission.reads.limit} [256],
+     * {@code http.admission.writes.limit} [64] and {@code http.admission.retryAfterSeconds} [1], those of
+     * {@link Limit#fromConfig}, and the event bus timeouts {@code http.eventbus.readTimeoutMs} [5000] and
+     * {@code http.eventbus.writeTimeoutMs} [10000].
+     */
+    public static Admission shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, Admission> instances = vertx.sharedData().getLocalMap(SHARED);
+        Admission created = new Admission(config);
+        Admission existing = instances.putIfAbsent(SHARED, created);
+        if (existing != null) {
+            return existing;
+        }
+        created.registerGauges("reads", created.reads);
+        created.registerGauges("writes", created.writes);
+        return created;
+    }
+
+    public Optional<ConcurrencyLimiter.Permit> tryAcquire(boolean write) {
+        Optional<ConcurrencyLimiter.Permit> permit = (write ? writes : reads).tryAcquire();
+        if (!permit.isPresent()) {
+            Meters.registry().counter("http.admission.rejected", "budget", budget(write)).increment();
+        }
+        return permit;
+    }
+
+    public long getTimeoutMs(boolean write) {
+        return write ? writeTimeoutMs : readTimeoutMs;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    private static String budget(boolean write) {
+        return write ? "writes" : "reads";
+    }
+
+    private void registerGauges(String budget, ConcurrencyLimiter limiter) {
+        Gauge.builder("http.admission.limit", limiter, ConcurrencyLimiter::getLimit)
+                .description("mongo service requests allowed in flight")
+                .tag("budget", budget)
+                .register(Meters.registry());
+        Gauge.builder("http.admission.inflight", limiter, ConcurrencyLimiter::getInflight)
+                .description("mongo service requests in flight")
+                .tag("budget", budget)
+                .register(Meters.registry());
+    }
+}
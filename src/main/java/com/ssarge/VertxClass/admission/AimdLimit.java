@@ -0,0 +1,35 @@
+package com.ssarge.VertxClass.admission;
+
+/**
+ * Additive increase, multiplicative decrease: one more slot per reply while at least half the limit is in use, and
+ * the limit cut by {@link #BACKOFF} whenever a request is dropped.
+ */
+final class AimdLimit implements Limit {
+
+    static final double BACKOFF = 0.9;
+
+    private final int min;
+    private final int max;
+    private volatile int limit;
+
+    AimdLimit(int initial, int min, int max) {
+        this.min = min;
+        this.max = max;
+        this.limit = Math.max(min, Math.min(max, initial));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inflight, boolean dropped) {
+        if (dropped) {
+            limit = Math.max(min, (int) (limit * BACKOFF));
+        } else if (inflight * 2 >= limit) {
+            // only grow while the limit is what holds requests back
+            limit = Math.min(max, limit + 1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ssarge.VertxClass.admission;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admits a request while fewer than {@link Limit#getLimit()} are in flight (a limit of 0 or less admits everything).
+ * Each admitted request holds a {@link Permit} that must be released exactly once, which also feeds its round trip
+ * time back to the limit.
+ */
+public class ConcurrencyLimiter {
+
+    private final Limit limit;
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    public ConcurrencyLimiter(Limit limit) {
+        this.limit = limit;
+    }
+
+    public Optional<Permit> tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            int max = limit.getLimit();
+            if (max > 0 && current >= max) {
+                return Optional.empty();
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        return Optional.of(new Permit(current + 1));
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public final class Permit {
+        private final long start = System.nanoTime();
+        private final int inflightAtStart;
+        private boolean released;
+
+        private Permit(int inflightAtStart) {
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        /**
+         * The request got a reply, whatever it said.
+         */
+        public void success() {
+            release(true, false);
+        }
+
+        /**
+         * The request timed out, a sign the service behind is overloaded.
+         */
+        public void dropped() {
+            release(true, true);
+        }
+
+        /**
+         * Frees the slot without telling the limit anything, e.g. for long lived streams or requests that never
+         * reached the service.
+         */
+        public void ignore() {
+            release(false, false);
+        }
+
+        private void release(boolean sample, boolean dropped) {
+            if (released) {
+                return;
+            }
+            released = true;
+            inflight.decrementAndGet();
+            if (sample) {
+                limit.onSample(System.nanoTime() - start, inflightAtStart, dropped);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ssarge.VertxClass.admission;
+
+final class FixedLimit implements Limit {
+
+    private final int limit;
+
+    FixedLimit(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inflight, boolean dropped) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.ssarge.VertxClass.admission;
+
+/**
+ * Follows the gap between recent and long run latency: while replies come back as fast as usual the limit grows by
+ * about its square root, and as they slow down (queueing somewhere downstream) it shrinks in proportion, at most by
+ * half per sample. Changes are smoothed so single slow replies don't swing it.
+ * <p>
+ * The long run latency is an exponential average over roughly {@link #LONG_WINDOW} replies; it is pulled down
+ * quickly when latency drops well below it, so a slow spell doesn't leave it inflated.
+ */
+final class GradientLimit implements Limit {
+
+    static final int LONG_WINDOW = 600;
+    static final double TOLERANCE = 1.5;
+    static final double SMOOTHING = 0.2;
+
+    private final int min;
+    private final int max;
+    private volatile int limit;
+    private double estimate;
+    private double longRtt;
+
+    GradientLimit(int initial, int min, int max) {
+        this.min = min;
+        this.max = max;
+        this.limit = Math.max(min, Math.min(max, initial));
+        this.estimate = limit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inflight, boolean dropped) {
+        double shortRtt = Math.max(rttNanos, 1);
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) * 2 / (LONG_WINDOW + 1);
+            if (longRtt / shortRtt > 2) {
+                longRtt *= 0.95;
+            }
+        }
+        if (!dropped && inflight < estimate / 2) {
+            // mostly idle, so these replies say nothing about how far the limit could go
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double target = estimate * gradient + Math.sqrt(estimate);
+        estimate = Math.max(min, Math.min(max, estimate * (1 - SMOOTHING) + target * SMOOTHING));
+        limit = (int) estimate;
+    }
+}
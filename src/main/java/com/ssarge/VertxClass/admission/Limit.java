@@ -0,0 +1,43 @@
+package com.ssarge.VertxClass.admission;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * How many requests may be in flight at once. Adaptive limits adjust themselves from the round trip time of each
+ * completed request and from requests that were dropped (timed out).
+ * <p>
+ * Implementations are called from every event loop, so must be thread safe.
+ */
+public interface Limit {
+
+    int getLimit();
+
+    /**
+     * @param rttNanos round trip time of the request
+     * @param inflight requests in flight when it was sent, itself included
+     * @param dropped  whether it timed out rather than got a reply
+     */
+    void onSample(long rttNanos, int inflight, boolean dropped);
+
+    /**
+     * Reads {@code http.admission.algorithm} [fixed] (fixed, aimd or gradient), the starting or fixed limit from
+     * {@code http.admission.<budget>.limit} (given as the default), and for adaptive limits the bounds
+     * {@code http.admission.minLimit} [10] and {@code http.admission.maxLimit} [1000].
+     */
+    static Limit fromConfig(JsonObject config, String budget, int defaultLimit) {
+        int initial = config.getInteger("http.admission." + budget + ".limit", defaultLimit);
+        int min = config.getInteger("http.admission.minLimit", 10);
+        int max = config.getInteger("http.admission.maxLimit", 1000);
+        String algorithm = config.getString("http.admission.algorithm", "fixed");
+        switch (algorithm) {
+            case "fixed":
+                return new FixedLimit(initial);
+            case "aimd":
+                return new AimdLimit(initial, min, max);
+            case "gradient":
+                return new GradientLimit(initial, min, max);
+            default:
+                throw new IllegalArgumentException("Unknown http.admission.algorithm: " + algorithm);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.ssarge.VertxClass.admission;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import static com.ssarge.VertxClass.AppConstants.MONGO_BREAKER;
+
+/**
+ * Tracks the circuit breaker state that each mongo service node publishes on
+ * {@link com.ssarge.VertxClass.AppConstants#MONGO_BREAKER}. When every node heard from recently reports an open
+ * breaker, writes can be refused here without a round trip; reads still go out, since the mongo service may answer
+ * them from its last known copies. Nodes that stop reporting are forgotten after {@code staleAfterMillis}.
+ * <p>
+ * Not thread safe; each verticle instance owns its own and only touches it from its event loop.
+ */
+public class MongoAvailability {
+
+    private final long staleAfterMillis;
+    private final LongSupplier clock;
+    private final Map<String, Report> reports = new HashMap<>();
+
+    MongoAvailability(long staleAfterMillis, LongSupplier clock) {
+        this.staleAfterMillis = staleAfterMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Reads config key {@code http.admission.breakerStaleMs} (default 6000) and starts listening for breaker states.
+     */
+    public static MongoAvailability listen(Vertx vertx, JsonObject config) {
+        MongoAvailability availability = new MongoAvailability(config.getLong("http.admission.breakerStaleMs", 6_000L),
+                System::currentTimeMillis);
+        vertx.eventBus().<JsonObject>consumer(MONGO_BREAKER, message -> availability.onState(message.body()));
+        return availability;
+    }
+
+    void onState(JsonObject state) {
+        String source = state.getString("node", "local") + "/" + state.getString("name", "");
+        reports.put(source, new Report("OPEN".equals(state.getString("state")), clock.getAsLong()));
+    }
+
+    public boolean isUnavailable() {
+        long now = clock.getAsLong();
+        reports.values().removeIf(report -> now - report.receivedAt >= staleAfterMillis);
+        return !reports.isEmpty() && reports.values().stream().allMatch(report -> report.open);
+    }
+
+    private static final class Report {
+        private final boolean open;
+        private final long receivedAt;
+
+        private Report(boolean open, long receivedAt) {
+            this.open = open;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ssarge.VertxClass.admission;
+
+/**
+ * A request turned away because its budget was used up. Thrown often under load, so carries no stack trace.
+ */
+public class RejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RejectedException(String message) {
+        super(message, null, false, false);
+    }
+}
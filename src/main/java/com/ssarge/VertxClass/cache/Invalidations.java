@@ -0,0 +1,53 @@
+package com.ssarge.VertxClass.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-id invalidation generations, so that a read which was in flight while its product changed does not cache the
+ * copy it read. Take {@link #generation()} when the read starts and ask {@link #changedSince} before caching.
+ * <p>
+ * Only the latest {@code maxTracked} invalidations are remembered; a read started before the oldest forgotten one
+ * counts as changed. Not thread safe; meant to be used from a single event loop.
+ */
+public class Invalidations {
+
+    private final Map<String, Long> latest;
+    private long generation;
+    private long forgottenUpTo;
+
+    public Invalidations(int maxTracked) {
+        this.latest = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > maxTracked) {
+                    forgottenUpTo = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public void invalidate(String id) {
+        generation++;
+        // re-inserted so the map stays ordered by generation
+        latest.remove(id);
+        latest.put(id, generation);
+    }
+
+    /**
+     * Whether {@code id} may have been invalidated after {@code readGeneration} was taken.
+     */
+    public boolean changedSince(String id, long readGeneration) {
+        if (readGeneration < forgottenUpTo) {
+            return true;
+        }
+        Long last = latest.get(id);
+        return last != null && last > readGeneration;
+    }
+}
@@ -0,0 +1,145 @@
+package com.ssarge.VertxClass.cache;
+
+import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.metrics.Meters;
+import io.micrometer.core.instrument.Counter;
+import io.vertx.core.json.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, in-process product cache: least recently used entries are dropped once {@code maxSize} is reached, and
+ * entries older than {@code ttlMillis} are treated as misses.
+ * <p>
+ * Not thread safe; each verticle instance owns its own cache and only touches it from its event loop.
+ * <p>
+ * A read that may race a write takes {@link #generation()} before it starts and caches its result with
+ * {@link #put(Product, long)}, which drops it when the id was evicted in the meantime.
+ * <p>
+ * Hits, misses and evictions are also counted in {@code cache.gets} (tagged {@code result}) and
+ * {@code cache.evictions}, tagged with the cache name and summed over the instances sharing it.
+ */
+public class ProductCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, CachedProduct> entries;
+    private final Invalidations invalidations;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ProductCache(String name, int maxSize, long ttlMillis) {
+        this(name, maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    ProductCache(String name, int maxSize, long ttlMillis, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedProduct> eldest) {
+                if (size() > ProductCache.this.maxSize) {
+                    evicted();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.invalidations = new Invalidations(maxSize);
+        this.hitCounter = Meters.registry().counter("cache.gets", "cache", name, "result", "hit");
+        this.missCounter = Meters.registry().counter("cache.gets", "cache", name, "result", "miss");
+        this.evictionCounter = Meters.registry().counter("cache.evictions", "cache", name);
+    }
+
+    /**
+     * Reads config keys {@code http.cache.maxSize} (default 10000) and {@code http.cache.ttlMs} (default 30000).
+     */
+    public static ProductCache fromConfig(JsonObject config) {
+        return new ProductCache("http", config.getInteger("http.cache.maxSize", 10_000),
+                config.getLong("http.cache.ttlMs", 30_000L));
+    }
+
+    public Optional<Product> get(String id) {
+        CachedProduct cached = entries.get(id);
+        if (cached != null && clock.getAsLong() - cached.storedAt < ttlMillis) {
+            hits++;
+            hitCounter.increment();
+            return Optional.of(cached.product);
+        }
+        if (cached != null) {
+            entries.remove(id);
+            evicted();
+        }
+        misses++;
+        missCounter.increment();
+        return Optional.empty();
+    }
+
+    public void put(Product product) {
+        if (maxSize > 0 && product.getId() != null) {
+            entries.put(product.getId(), new CachedProduct(product, clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Caches a product read from the source unless its id was evicted after {@code readGeneration}, in which case
+     * the read may predate the change.
+     */
+    public void put(Product product, long readGeneration) {
+        if (product.getId() != null && !invalidations.changedSince(product.getId(), readGeneration)) {
+            put(product);
+        }
+    }
+
+    public long generation() {
+        return invalidations.generation();
+    }
+
+    public void evict(String id) {
+        invalidations.invalidate(id);
+        if (entries.remove(id) != null) {
+            evicted();
+        }
+    }
+
+    private void evicted() {
+        evictions++;
+        evictionCounter.increment();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private static final class CachedProduct {
+        private final Product product;
+        private final long storedAt;
+
+        private CachedProduct(Product product, long storedAt) {
+            this.product = product;
+            this.storedAt = storedAt;
+        }
+    }
+}
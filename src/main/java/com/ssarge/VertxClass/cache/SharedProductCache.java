@@ -0,0 +1,79 @@
+package com.ssarge.VertxClass.cache;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.AsyncMap;
+
+import java.util.Optional;
+
+/**
+ * Product cache shared by every node of the cluster, backed by the {@code products.cache} map.
+ * <p>
+ * With the hazelcast cluster manager this is the IMap of the same name, configured (including its near-cache) in
+ * cluster.xml. A disabled cache, or any map failure, behaves as a miss so callers fall back to mongo.
+ */
+public class SharedProductCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedProductCache.class);
+    private static final String MAP_NAME = "products.cache";
+
+    private final long ttlMillis;
+    private AsyncMap<String, JsonObject> map;
+
+    private SharedProductCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Reads config keys {@code mongodb.cache.enabled} (default false) and {@code mongodb.cache.ttlMs} (default 300000).
+     */
+    public static SharedProductCache create(Vertx vertx, JsonObject config) {
+        SharedProductCache cache = new SharedProductCache(config.getLong("mongodb.cache.ttlMs", 300_000L));
+        if (config.getBoolean("mongodb.cache.enabled", false)) {
+            vertx.sharedData().<String, JsonObject>getAsyncMap(MAP_NAME, result -> {
+                if (result.succeeded()) {
+                    cache.map = result.result();
+                } else {
+                    LOGGER.error("Shared product cache unavailable " + result.cause().getMessage(), result.cause());
+                }
+            });
+        }
+        return cache;
+    }
+
+    public static SharedProductCache disabled() {
+        return new SharedProductCache(0);
+    }
+
+    public void get(String id, Handler<Optional<Product>> handler) {
+        if (map == null) {
+            handler.handle(Optional.empty());
+            return;
+        }
+        map.get(id, result -> handler.handle(Optional.ofNullable(result.succeeded() ? result.result() : null)
+                .map(json -> json.mapTo(Product.class))));
+    }
+
+    public void put(Product product) {
+        if (map != null && product.getId() != null) {
+            map.put(product.getId(), JsonObject.mapFrom(product), ttlMillis, this::logFailure);
+        }
+    }
+
+    public void remove(String id) {
+        if (map != null) {
+            map.remove(id, this::logFailure);
+        }
+    }
+
+    private void logFailure(AsyncResult<?> result) {
+        if (result.failed()) {
+            LOGGER.error("Shared product cache update failed " + result.cause().getMessage(), result.cause());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.ssarge.VertxClass.cache;
+
+import io.vertx.core.Handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Collapses concurrent calls for the same key into one: while an operation for a key is running, later callers for
+ * that key just wait for its result instead of starting their own.
+ * <p>
+ * Not thread safe; meant to be used from a single event loop.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, List<Handler<V>>> inFlight = new HashMap<>();
+
+    /**
+     * Runs {@code operation} for {@code key} unless one is already running, and hands its result to {@code handler}.
+     * The operation must call the handler it is given exactly once.
+     */
+    public void execute(K key, Consumer<Handler<V>> operation, Handler<V> handler) {
+        List<Handler<V>> waiters = inFlight.get(key);
+        if (waiters != null) {
+            waiters.add(handler);
+            return;
+        }
+        waiters = new ArrayList<>();
+        waiters.add(handler);
+        inFlight.put(key, waiters);
+        try {
+            operation.accept(result -> {
+                List<Handler<V>> done = inFlight.remove(key);
+                if (done != null) {
+                    done.forEach(waiter -> waiter.handle(result));
+                }
+            });
+        } catch (RuntimeException exc) {
+            inFlight.remove(key);
+            throw exc;
+        }
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+}
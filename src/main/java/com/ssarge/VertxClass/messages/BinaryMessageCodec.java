@@ -0,0 +1,176 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base for the product codecs.
+ * <p>
+ * Across the cluster a message is written as an int length followed by a compact field-by-field payload.
+ * Within the same JVM {@link #transform(Object)} hands over the original reference, so nothing is copied.
+ */
+public abstract class BinaryMessageCodec<T> implements MessageCodec<T, T> {
+
+    private static final int NULL_LENGTH = -1;
+
+    protected abstract void write(Buffer buffer, T value);
+
+    protected abstract T read(Reader reader);
+
+    @Override
+    public void encodeToWire(Buffer buffer, T value) {
+        int lengthPos = buffer.length();
+        buffer.appendInt(0);
+        write(buffer, value);
+        buffer.setInt(lengthPos, buffer.length() - lengthPos - 4);
+    }
+
+    @Override
+    public T decodeFromWire(int pos, Buffer buffer) {
+        return read(new Reader(buffer, pos + 4, pos + 4 + buffer.getInt(pos)));
+    }
+
+    @Override
+    public T transform(T value) {
+        return value;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    protected static void writeString(Buffer buffer, String value) {
+        if (value == null) {
+            buffer.appendInt(NULL_LENGTH);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.appendInt(bytes.length).appendBytes(bytes);
+        }
+    }
+
+    protected static void writeInteger(Buffer buffer, Integer value) {
+        if (value == null) {
+            buffer.appendByte((byte) 0);
+        } else {
+            buffer.appendByte((byte) 1).appendInt(value);
+        }
+    }
+
+    protected static void writeProduct(Buffer buffer, Product product) {
+        if (product == null) {
+            buffer.appendByte((byte) 0);
+        } else {
+            buffer.appendByte((byte) 1);
+            writeString(buffer, product.getId());
+            writeString(buffer, product.getNumber());
+            writeString(buffer, product.getDescription());
+        }
+    }
+
+    protected static void writeStrings(Buffer buffer, List<String> values) {
+        if (values == null) {
+            buffer.appendInt(NULL_LENGTH);
+        } else {
+            buffer.appendInt(values.size());
+            values.forEach(value -> writeString(buffer, value));
+        }
+    }
+
+    protected static void writeProducts(Buffer buffer, List<Product> products) {
+        if (products == null) {
+            buffer.appendInt(NULL_LENGTH);
+        } else {
+            buffer.appendInt(products.size());
+            products.forEach(product -> writeProduct(buffer, product));
+        }
+    }
+
+    /**
+     * Sequential reader over a wire buffer.
+     */
+    protected static final class Reader {
+        private final Buffer buffer;
+        private final int end;
+        private int pos;
+
+        private Reader(Buffer buffer, int pos, int end) {
+            this.buffer = buffer;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        /**
+         * Whether the message has more to read, for fields appended at the end of a codec that shorter encodings
+         * leave out. The codecs carry no version: this does not let nodes running different versions exchange
+         * messages (the reply codec has changed shape mid-message).
+         */
+        public boolean hasRemaining() {
+            return pos < end;
+        }
+
+        public byte readByte() {
+            return buffer.getByte(pos++);
+        }
+
+        public int readInt() {
+            int value = buffer.getInt(pos);
+            pos += 4;
+            return value;
+        }
+
+        public String readString() {
+            int length = readInt();
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            String value = buffer.getString(pos, pos + length, StandardCharsets.UTF_8.name());
+            pos += length;
+            return value;
+        }
+
+        public Integer readInteger() {
+            return readByte() == 0 ? null : readInt();
+        }
+
+        public Product readProduct() {
+            if (readByte() == 0) {
+                return null;
+            }
+            return Product.builder()
+                    .id(readString())
+                    .number(readString())
+                    .description(readString())
+                    .build();
+        }
+
+        public List<String> readStrings() {
+            int size = readInt();
+            if (size == NULL_LENGTH) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        public List<Product> readProducts() {
+            int size = readInt();
+            if (size == NULL_LENGTH) {
+                return null;
+            }
+            List<Product> products = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                products.add(readProduct());
+            }
+            return products;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ssarge.VertxClass.messages;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one item of a bulk command: the id it was stored under, or the error that stopped it.
+ */
+@Builder
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@AllArgsConstructor
+@NoArgsConstructor
+public class ItemResult {
+    private int index;
+    private String id;
+    private String error;
+
+    public static ItemResult ok(int index, String id) {
+        return new ItemResult(index, id, null);
+    }
+
+    public static ItemResult failed(int index, String error) {
+        return new ItemResult(index, null, error);
+    }
+}
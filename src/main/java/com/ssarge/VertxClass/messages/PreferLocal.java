@@ -0,0 +1,35 @@
+package com.ssarge.VertxClass.messages;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+
+/**
+ * Event bus requests that stay in the JVM when they can. With local only delivery options the request goes to a
+ * handler of this Vert.x instance, without the cluster lookup, serialization and TCP hop; only when there is no
+ * local handler is it sent again through the cluster. Other options are sent as they are.
+ */
+public final class PreferLocal {
+
+    private PreferLocal() {}
+
+    public static <T> void request(EventBus eventBus, String address, Object message, DeliveryOptions options,
+                                   Handler<AsyncResult<Message<T>>> handler) {
+        if (!options.isLocalOnly()) {
+            eventBus.request(address, message, options, handler);
+            return;
+        }
+        eventBus.<T>request(address, message, options, reply -> {
+            if (reply.failed() && reply.cause() instanceof ReplyException
+                    && ((ReplyException) reply.cause()).failureType() == ReplyFailure.NO_HANDLERS) {
+                eventBus.request(address, message, new DeliveryOptions(options).setLocalOnly(false), handler);
+            } else {
+                handler.handle(reply);
+            }
+        });
+    }
+}
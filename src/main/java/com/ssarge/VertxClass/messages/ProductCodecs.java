@@ -0,0 +1,24 @@
+package com.ssarge.VertxClass.messages;
+
+import io.vertx.core.eventbus.EventBus;
+
+public final class ProductCodecs {
+
+    private ProductCodecs(){}
+
+    /**
+     * Registers the product codecs as defaults for their types. Safe to call more than once per event bus.
+     */
+    public static void register(EventBus eventBus) {
+        registerDefault(eventBus, ProductCommand.class, new ProductCommandCodec());
+        registerDefault(eventBus, ProductReply.class, new ProductReplyCodec());
+    }
+
+    private static <T> void registerDefault(EventBus eventBus, Class<T> type, BinaryMessageCodec<T> codec) {
+        try {
+            eventBus.registerDefaultCodec(type, codec);
+        } catch (IllegalStateException alreadyRegistered) {
+            // another verticle on this vertx instance got there first
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.json.JsonObject;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Typed command sent to the mongo service over the event bus.
+ * <p>
+ * Sent with {@link ProductCommandCodec}, so a local consumer receives this exact instance.
+ * Treat it as read-only once it has been sent.
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductCommand {
+    private String cmd;
+    private String id;
+    /**
+     * Business number, for get_product_by_number.
+     */
+    private String number;
+    private Product value;
+    private List<Product> values;
+    private String after;
+    private Integer limit;
+    /**
+     * Product fields to return ({@link ProductFields}); null for all of them.
+     */
+    private List<String> fields;
+
+    /**
+     * Accepts either a typed command or the legacy json body ({"cmd", "id", "value"}) still sent by older nodes.
+     */
+    public static ProductCommand from(Object body) {
+        if (body instanceof ProductCommand) {
+            return (ProductCommand) body;
+        }
+        JsonObject json = body instanceof JsonObject ? (JsonObject) body : new JsonObject(body.toString());
+        return ProductCommand.builder()
+                .cmd(json.getString("cmd"))
+                .id(json.getString("id"))
+                .value(Optional.ofNullable(json.getJsonObject("value"))
+                        .map(value -> value.mapTo(Product.class))
+                        .orElse(null))
+                .values(Optional.ofNullable(json.getJsonArray("values"))
+                        .map(values -> values.stream()
+                                .map(value -> ((JsonObject) value).mapTo(Product.class))
+                                .collect(Collectors.toList()))
+                        .orElse(null))
+                .after(json.getString("after"))
+                .limit(json.getInteger("limit"))
+                .number(json.getString("number"))
+                .fields(Optional.ofNullable(json.getJsonArray("fields"))
+                        .map(fields -> fields.stream().map(Object::toString).collect(Collectors.toList()))
+                        .orElse(null))
+                .build();
+    }
+}
@@ -0,0 +1,37 @@
+package com.ssarge.VertxClass.messages;
+
+import io.vertx.core.buffer.Buffer;
+
+public class ProductCommandCodec extends BinaryMessageCodec<ProductCommand> {
+
+    @Override
+    protected void write(Buffer buffer, ProductCommand command) {
+        writeString(buffer, command.getCmd());
+        writeString(buffer, command.getId());
+        writeProduct(buffer, command.getValue());
+        writeProducts(buffer, command.getValues());
+        writeString(buffer, command.getAfter());
+        writeInteger(buffer, command.getLimit());
+        writeStrings(buffer, command.getFields());
+        writeString(buffer, command.getNumber());
+    }
+
+    @Override
+    protected ProductCommand read(Reader reader) {
+        return ProductCommand.builder()
+                .cmd(reader.readString())
+                .id(reader.readString())
+                .value(reader.readProduct())
+                .values(reader.readProducts())
+                .after(reader.readString())
+                .limit(reader.readInteger())
+                .fields(reader.hasRemaining() ? reader.readStrings() : null)
+                .number(reader.hasRemaining() ? reader.readString() : null)
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return "product-command";
+    }
+}
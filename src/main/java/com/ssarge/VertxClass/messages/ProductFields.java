@@ -0,0 +1,77 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Field selection for product reads ({@code ?fields=id,number}). The id is always returned, as Mongo does with
+ * {@code _id}; a null list means every field.
+ */
+public final class ProductFields {
+
+    public static final String ID = "id";
+    public static final String NUMBER = "number";
+    public static final String DESCRIPTION = "description";
+
+    private static final List<String> ALL = List.of(ID, NUMBER, DESCRIPTION);
+
+    private ProductFields(){}
+
+    /**
+     * Parses a comma separated list of field names, dropping repeats.
+     *
+     * @throws IllegalArgumentException for an empty list or an unknown field
+     */
+    public static List<String> parse(String fields) {
+        Set<String> parsed = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!ALL.contains(name)) {
+                throw new IllegalArgumentException("fields must be a comma separated list of " + String.join(", ", ALL));
+            }
+            parsed.add(name);
+        }
+        return new ArrayList<>(parsed);
+    }
+
+    public static boolean includes(List<String> fields, String field) {
+        return fields == null || ID.equals(field) || fields.contains(field);
+    }
+
+    /**
+     * The Mongo projection for the fields, or null (everything) when no selection was made.
+     */
+    public static JsonObject projection(List<String> fields) {
+        if (fields == null) {
+            return null;
+        }
+        JsonObject projection = new JsonObject();
+        fields.stream()
+                .filter(field -> !ID.equals(field))
+                .forEach(field -> projection.put(field, 1));
+        if (projection.isEmpty()) {
+            // an empty projection would return every field
+            projection.put("_id", 1);
+        }
+        return projection;
+    }
+
+    /**
+     * A copy with only the selected fields set, for selections served from a cached full product.
+     */
+    public static Product project(Product product, List<String> fields) {
+        if (fields == null) {
+            return product;
+        }
+        return Product.builder()
+                .id(product.getId())
+                .number(includes(fields, NUMBER) ? product.getNumber() : null)
+                .description(includes(fields, DESCRIPTION) ? product.getDescription() : null)
+                .build();
+    }
+}
@@ -0,0 +1,124 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Typed reply from the mongo service. Exactly one of product, products, results, status or error is expected to be set;
+ * a product or an error may also carry a status: {@link #STALE} for a last known copy served while Mongo is
+ * unreachable, {@link #UNAVAILABLE} for a command refused for the same reason, {@link #NOT_FOUND} for a lookup that
+ * matched nothing.
+ */
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductReply {
+
+    public static final String STREAM_MORE = "more";
+    public static final String STREAM_DONE = "done";
+    public static final String STALE = "stale";
+    public static final String UNAVAILABLE = "unavailable";
+    public static final String NOT_FOUND = "not_found";
+
+    private Product product;
+    private List<Product> products;
+    private String next;
+    private List<ItemResult> results;
+    private String status;
+    private String id;
+    private String error;
+    private String cause;
+
+    public static ProductReply of(Product product) {
+        return ProductReply.builder().product(product).build();
+    }
+
+    public static ProductReply stale(Product product) {
+        return ProductReply.builder().product(product).status(STALE).build();
+    }
+
+    public static ProductReply of(List<Product> products) {
+        return ProductReply.builder().products(products).build();
+    }
+
+    public static ProductReply of(List<Product> products, String next) {
+        return ProductReply.builder().products(products).next(next).build();
+    }
+
+    public static ProductReply ofResults(List<ItemResult> results) {
+        return ProductReply.builder().results(results).build();
+    }
+
+    public static ProductReply removed(String id) {
+        return ProductReply.builder().status("removed").id(id).build();
+    }
+
+    public static ProductReply error(String error) {
+        return ProductReply.builder().error(error).build();
+    }
+
+    public static ProductReply error(String error, String cause) {
+        return ProductReply.builder().error(error).cause(cause).build();
+    }
+
+    public static ProductReply unavailable(String error) {
+        return ProductReply.builder().error(error).status(UNAVAILABLE).build();
+    }
+
+    public static ProductReply notFound(String error) {
+        return ProductReply.builder().error(error).status(NOT_FOUND).build();
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+
+    public boolean isStale() {
+        return STALE.equals(status);
+    }
+
+    public boolean isUnavailable() {
+        return UNAVAILABLE.equals(status);
+    }
+
+    public boolean isNotFound() {
+        return NOT_FOUND.equals(status);
+    }
+
+    /**
+     * Legacy json shape, used when replying to json commands and when rendering http responses.
+     */
+    public JsonObject toJson() {
+        if (error != null) {
+            JsonObject json = new JsonObject().put("error", error);
+            Optional.ofNullable(cause).ifPresent(c -> json.put("cause", c));
+            return json;
+        }
+        if (product != null) {
+            return JsonObject.mapFrom(product);
+        }
+        if (products != null) {
+            JsonObject json = new JsonObject().put("products", new JsonArray(products.stream()
+                    .map(JsonObject::mapFrom)
+                    .collect(Collectors.toList())));
+            Optional.ofNullable(next).ifPresent(n -> json.put("next", n));
+            return json;
+        }
+        if (results != null) {
+            return new JsonObject().put("results", new JsonArray(results.stream()
+                    .map(JsonObject::mapFrom)
+                    .collect(Collectors.toList())));
+        }
+        return new JsonObject().put("status", status).put("id", id);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ssarge.VertxClass.messages;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProductReplyCodec extends BinaryMessageCodec<ProductReply> {
+
+    private static final int NO_RESULTS = -1;
+
+    @Override
+    protected void write(Buffer buffer, ProductReply reply) {
+        writeProduct(buffer, reply.getProduct());
+        writeProducts(buffer, reply.getProducts());
+        List<ItemResult> results = reply.getResults();
+        if (results == null) {
+            buffer.appendInt(NO_RESULTS);
+        } else {
+            buffer.appendInt(results.size());
+            results.forEach(result -> {
+                buffer.appendInt(result.getIndex());
+                writeString(buffer, result.getId());
+                writeString(buffer, result.getError());
+            });
+        }
+        writeString(buffer, reply.getNext());
+        writeString(buffer, reply.getStatus());
+        writeString(buffer, reply.getId());
+        writeString(buffer, reply.getError());
+        writeString(buffer, reply.getCause());
+    }
+
+    @Override
+    protected ProductReply read(Reader reader) {
+        ProductReply.ProductReplyBuilder builder = ProductReply.builder()
+                .product(reader.readProduct())
+                .products(reader.readProducts());
+        int size = reader.readInt();
+        if (size != NO_RESULTS) {
+            List<ItemResult> results = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                results.add(new ItemResult(reader.readInt(), reader.readString(), reader.readString()));
+            }
+            builder.results(results);
+        }
+        return builder
+                .next(reader.readString())
+                .status(reader.readString())
+                .id(reader.readString())
+                .error(reader.readString())
+                .cause(reader.readString())
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return "product-reply";
+    }
+}
@@ -0,0 +1,170 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static com.ssarge.VertxClass.AppConstants.*;
+
+/**
+ * Reads the result of a streaming command (e.g. {@code stream_products}) from the mongo service one batch at a time.
+ * <p>
+ * The mongo side replies with a batch and waits; the next batch is only asked for (by replying to that batch)
+ * once every product of the current one has been handed to the handler. A paused stream therefore holds at most
+ * one batch in memory on either side of the event bus.
+ */
+public class ProductStream implements ReadStream<Product> {
+
+    private final Vertx vertx;
+    private final ProductCommand command;
+    private final DeliveryOptions options;
+
+    private final Deque<Product> pending = new ArrayDeque<>();
+    private Message<ProductReply> lastBatch;
+    private long demand = Long.MAX_VALUE;
+    private boolean started;
+    private boolean requested;
+    private boolean lastBatchReceived;
+    private boolean ended;
+    private boolean emitting;
+
+    private Handler<Product> handler;
+    private Handler<Void> endHandler;
+    private Handler<Throwable> exceptionHandler;
+
+    public ProductStream(Vertx vertx, ProductCommand command) {
+        this(vertx, command, new DeliveryOptions());
+    }
+
+    /**
+     * @param options used for the command and for each request for the next batch, e.g. for their timeout; the
+     *                command is sent with {@link PreferLocal}
+     */
+    public ProductStream(Vertx vertx, ProductCommand command, DeliveryOptions options) {
+        this.vertx = vertx;
+        this.command = command;
+        this.options = options;
+    }
+
+    @Override
+    public ProductStream exceptionHandler(Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public ProductStream handler(Handler<Product> handler) {
+        this.handler = handler;
+        if (handler == null) {
+            cancel();
+        } else if (!started) {
+            started = true;
+            requested = true;
+            PreferLocal.<ProductReply>request(vertx.eventBus(), MONGO_SERVICE, command, options, this::onBatch);
+        }
+        return this;
+    }
+
+    @Override
+    public ProductStream endHandler(Handler<Void> handler) {
+        this.endHandler = handler;
+        return this;
+    }
+
+    @Override
+    public ProductStream pause() {
+        demand = 0;
+        return this;
+    }
+
+    @Override
+    public ProductStream resume() {
+        return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public ProductStream fetch(long amount) {
+        demand = Long.MAX_VALUE - demand < amount ? Long.MAX_VALUE : demand + amount;
+        emit();
+        return this;
+    }
+
+    private void onBatch(AsyncResult<Message<ProductReply>> result) {
+        requested = false;
+        if (ended) {
+            // cancelled while this batch was on its way: the mongo side is waiting on it with the cursor open
+            if (result.succeeded() && ProductReply.STREAM_MORE.equals(result.result().body().getStatus())) {
+                result.result().reply(ProductCommand.builder().cmd(STREAM_CANCEL).build());
+            }
+            return;
+        }
+        if (result.failed()) {
+            fail(result.cause());
+            return;
+        }
+        ProductReply reply = result.result().body();
+        if (reply.failed()) {
+            fail(new IllegalStateException(reply.getError()));
+            return;
+        }
+        pending.addAll(reply.getProducts());
+        lastBatchReceived = !ProductReply.STREAM_MORE.equals(reply.getStatus());
+        lastBatch = lastBatchReceived ? null : result.result();
+        emit();
+    }
+
+    private void emit() {
+        if (emitting || ended) {
+            return;
+        }
+        emitting = true;
+        try {
+            while (demand > 0 && !pending.isEmpty() && handler != null) {
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                handler.handle(pending.poll());
+            }
+        } finally {
+            emitting = false;
+        }
+        if (!pending.isEmpty() || ended || handler == null) {
+            return;
+        }
+        if (lastBatchReceived) {
+            ended = true;
+            if (endHandler != null) {
+                endHandler.handle(null);
+            }
+        } else if (demand > 0 && !requested && lastBatch != null) {
+            Message<ProductReply> batch = lastBatch;
+            lastBatch = null;
+            requested = true;
+            batch.<ProductReply>replyAndRequest(ProductCommand.builder().cmd(STREAM_NEXT).build(), options, this::onBatch);
+        }
+    }
+
+    private void cancel() {
+        ended = true;
+        pending.clear();
+        if (lastBatch != null) {
+            lastBatch.reply(ProductCommand.builder().cmd(STREAM_CANCEL).build());
+            lastBatch = null;
+        }
+    }
+
+    private void fail(Throwable cause) {
+        ended = true;
+        pending.clear();
+        if (exceptionHandler != null) {
+            exceptionHandler.handle(cause);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.ssarge.VertxClass.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.micrometer.MicrometerMetricsOptions;
+import io.vertx.micrometer.VertxPrometheusOptions;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prometheus metrics. Vert.x itself reports HTTP connections and requests, event bus handlers and pending messages;
+ * the application adds timers per API route ({@code http.route.requests}), per mongo service command
+ * ({@code mongo.commands}) and per Mongo client call ({@code mongo.calls}, failures also counted in
+ * {@code mongo.calls.errors}).
+ * <p>
+ * With metrics disabled, or in tests where Vert.x runs without them, meters go to micrometer's global registry,
+ * which drops them unless something is added to it.
+ */
+public final class Meters {
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+
+    private Meters(){}
+
+    /**
+     * Metrics options for VertxOptions, driven by {@code metrics.enabled} [true]. When {@code portKey} is set in the
+     * config, an embedded server exposes {@code /metrics} on that port, for processes with no HTTP server of their own.
+     */
+    public static MicrometerMetricsOptions options(JsonObject config, String portKey) {
+        VertxPrometheusOptions prometheusOptions = new VertxPrometheusOptions().setEnabled(true);
+        Optional.ofNullable(portKey)
+                .map(config::getInteger)
+                .ifPresent(port -> prometheusOptions.setStartEmbeddedServer(true)
+                        .setEmbeddedServerOptions(new HttpServerOptions().setPort(port)));
+        return new MicrometerMetricsOptions()
+                .setEnabled(config.getBoolean("metrics.enabled", true))
+                .setPrometheusOptions(prometheusOptions);
+    }
+
+    public static boolean enabled() {
+        return BackendRegistries.getDefaultNow() != null;
+    }
+
+    public static MeterRegistry registry() {
+        return Optional.ofNullable(BackendRegistries.getDefaultNow()).orElse(Metrics.globalRegistry);
+    }
+
+    public static Timer timer(String name, String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry());
+    }
+
+    /**
+     * Wraps a Mongo client callback so the call's latency and outcome are recorded before the handler runs.
+     */
+    public static <T> Handler<AsyncResult<T>> timeMongo(String operation, Handler<AsyncResult<T>> handler) {
+        long start = System.nanoTime();
+        return result -> {
+            String outcome = result.succeeded() ? SUCCESS : ERROR;
+            timer("mongo.calls", "operation", operation, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (result.failed()) {
+                registry().counter("mongo.calls.errors", "operation", operation).increment();
+            }
+            handler.handle(result);
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package com.ssarge.VertxClass.resources;
+
+import com.ssarge.VertxClass.metrics.Meters;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
+import io.vertx.ext.mongo.MongoClient;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces single inserts: documents are held for at most {@code windowMs}, or until {@code maxBatchSize} of them
+ * are waiting, and then written with one unordered bulk write. Each caller is handed the id of its own document,
+ * or the error for it.
+ * <p>
+ * Only used from the event loop of the verticle that created it.
+ */
+class CreateBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CreateBatcher.class);
+
+    private final Vertx vertx;
+    private final MongoClient mongoClient;
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final int maxQueued;
+
+    private List<PendingInsert> pending = new ArrayList<>();
+    private int inFlight;
+    private long timerId = -1;
+
+    CreateBatcher(Vertx vertx, MongoClient mongoClient, long windowMs, int maxBatchSize, int maxQueued) {
+        this.vertx = vertx;
+        this.mongoClient = mongoClient;
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Reads config keys {@code mongodb.createBatch.windowMs} (default 5), {@code mongodb.createBatch.maxSize}
+     * (default 100) and {@code mongodb.createBatch.maxQueued} (default 10000). Returns null unless
+     * {@code mongodb.createBatch.enabled} is set.
+     */
+    static CreateBatcher fromConfig(Vertx vertx, MongoClient mongoClient, JsonObject config) {
+        if (!config.getBoolean("mongodb.createBatch.enabled", false)) {
+            return null;
+        }
+        return new CreateBatcher(vertx, mongoClient,
+                config.getLong("mongodb.createBatch.windowMs", 5L),
+                config.getInteger("mongodb.createBatch.maxSize", 100),
+                config.getInteger("mongodb.createBatch.maxQueued", 10_000));
+    }
+
+    void insert(JsonObject document, Handler<AsyncResult<String>> handler) {
+        if (pending.size() + inFlight >= maxQueued) {
+            handler.handle(Future.failedFuture("Too many queued writes"));
+            return;
+        }
+        pending.add(new PendingInsert(document, handler));
+        if (pending.size() >= maxBatchSize) {
+            flush();
+        } else if (timerId < 0) {
+            timerId = vertx.setTimer(windowMs, id -> {
+                timerId = -1;
+                flush();
+            });
+        }
+    }
+
+    private void flush() {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingInsert> batch = pending;
+        pending = new ArrayList<>();
+        inFlight += batch.size();
+
+        List<String> ids = new ArrayList<>(batch.size());
+        List<BulkOperation> operations = new ArrayList<>(batch.size());
+        for (PendingInsert insert : batch) {
+            String id = new ObjectId().toHexString();
+            ids.add(id);
+            operations.add(BulkOperation.createInsert(insert.document.put("_id", id)));
+        }
+        try {
+            mongoClient.bulkWriteWithOptions("products", operations, new BulkWriteOptions(false), Meters.timeMongo("bulkWrite", response -> {
+                inFlight -= batch.size();
+                LOGGER.info("createBatch wrote " + batch.size() + " products");
+                Map<Integer, String> errors = response.succeeded()
+                        ? Collections.emptyMap()
+                        : MongoManager.writeErrors(response.cause(), batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).handler.handle(errors.containsKey(i)
+                            ? Future.failedFuture(errors.get(i))
+                            : Future.succeededFuture(ids.get(i)));
+                }
+            }));
+        } catch (Exception exc) {
+            LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
+            inFlight -= batch.size();
+            batch.forEach(insert -> insert.handler.handle(Future.failedFuture(exc)));
+        }
+    }
+
+    private static final class PendingInsert {
+        private final JsonObject document;
+        private final Handler<AsyncResult<String>> handler;
+
+        private PendingInsert(JsonObject document, Handler<AsyncResult<String>> handler) {
+            this.document = document;
+            this.handler = handler;
+        }
+    }
+}
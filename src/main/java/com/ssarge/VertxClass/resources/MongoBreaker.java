@@ -0,0 +1,109 @@
+package com.ssarge.VertxClass.resources;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import io.vertx.circuitbreaker.CircuitBreaker;
+import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.circuitbreaker.CircuitBreakerState;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.ssarge.VertxClass.AppConstants.MONGO_BREAKER;
+
+/**
+ * Circuit breaker around the Mongo client calls. After {@code maxFailures} failed or timed out calls it opens and
+ * calls fail at once with an {@link io.vertx.circuitbreaker.OpenCircuitException} instead of waiting on a database
+ * that isn't there; after {@code resetTimeoutMs} one call is let through (half open) and its outcome closes or
+ * reopens it.
+ * <p>
+ * Write errors (duplicate keys and the like) are the caller's problem, not the database's, so they pass through
+ * without counting as failures. One breaker is shared by every MongoDBVerticle of the Vert.x instance; its state is
+ * published on {@link com.ssarge.VertxClass.AppConstants#MONGO_BREAKER} when it changes and every
+ * {@code notificationPeriodMs}. A disabled breaker just makes the calls.
+ */
+public class MongoBreaker implements Shareable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoBreaker.class);
+    private static final String SHARED = "com.ssarge.mongoBreaker";
+
+    private final CircuitBreaker breaker;
+
+    private MongoBreaker(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * Reads config keys {@code mongodb.breaker.enabled} (default false), {@code mongodb.breaker.maxFailures}
+     * (default 5), {@code mongodb.breaker.timeoutMs} (default 5000), {@code mongodb.breaker.resetTimeoutMs}
+     * (default 10000) and {@code mongodb.breaker.notificationPeriodMs} (default 2000).
+     */
+    public static MongoBreaker create(Vertx vertx, JsonObject config) {
+        if (!config.getBoolean("mongodb.breaker.enabled", false)) {
+            return disabled();
+        }
+        LocalMap<String, MongoBreaker> breakers = vertx.sharedData().getLocalMap(SHARED);
+        return breakers.computeIfAbsent(SHARED, name -> {
+            CircuitBreakerOptions options = new CircuitBreakerOptions()
+                    .setMaxFailures(config.getInteger("mongodb.breaker.maxFailures", 5))
+                    .setTimeout(config.getLong("mongodb.breaker.timeoutMs", 5_000L))
+                    .setResetTimeout(config.getLong("mongodb.breaker.resetTimeoutMs", 10_000L))
+                    .setNotificationAddress(MONGO_BREAKER)
+                    .setNotificationPeriod(config.getLong("mongodb.breaker.notificationPeriodMs", 2_000L));
+            CircuitBreaker breaker = CircuitBreaker.create("mongo", vertx, options)
+                    .openHandler(v -> LOGGER.warn("Mongo circuit breaker opened"))
+                    .halfOpenHandler(v -> LOGGER.info("Mongo circuit breaker half open, probing"))
+                    .closeHandler(v -> LOGGER.info("Mongo circuit breaker closed"));
+            return new MongoBreaker(breaker);
+        });
+    }
+
+    public static MongoBreaker disabled() {
+        return new MongoBreaker(null);
+    }
+
+    public boolean isEnabled() {
+        return breaker != null;
+    }
+
+    public boolean isOpen() {
+        return breaker != null && breaker.state() == CircuitBreakerState.OPEN;
+    }
+
+    /**
+     * Makes the call through the breaker; the handler gets the call's own result, or the breaker's failure when the
+     * call was not made or took too long.
+     */
+    public <T> void execute(Handler<Handler<AsyncResult<T>>> call, Handler<AsyncResult<T>> handler) {
+        if (breaker == null) {
+            call.handle(handler);
+            return;
+        }
+        AtomicReference<AsyncResult<T>> outcome = new AtomicReference<>();
+        breaker.<Void>execute(promise -> call.handle(result -> {
+            outcome.set(result);
+            if (result.failed() && isOutage(result.cause())) {
+                promise.tryFail(result.cause());
+            } else {
+                promise.tryComplete();
+            }
+        })).setHandler(done -> handler.handle(done.succeeded() || outcome.get() != null
+                ? outcome.get()
+                : Future.failedFuture(done.cause())));
+    }
+
+    /**
+     * Whether a failure says something about the database rather than about the request.
+     */
+    static boolean isOutage(Throwable cause) {
+        return !(cause instanceof MongoWriteException || cause instanceof MongoBulkWriteException);
+    }
+}
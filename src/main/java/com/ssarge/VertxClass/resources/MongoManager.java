@@ -1,17 +1,44 @@
 package com.ssarge.VertxClass.resources;
 
+import com.mongodb.MongoBulkWriteException;
+import com.ssarge.VertxClass.cache.Invalidations;
+import com.ssarge.VertxClass.cache.ProductCache;
+import com.ssarge.VertxClass.cache.SharedProductCache;
+import com.ssarge.VertxClass.cache.SingleFlight;
 import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.messages.ItemResult;
+import com.ssarge.VertxClass.messages.ProductCodecs;
+import com.ssarge.VertxClass.messages.ProductCommand;
+import com.ssarge.VertxClass.messages.ProductFields;
+import com.ssarge.VertxClass.messages.ProductReply;
+import com.ssarge.VertxClass.metrics.Meters;
+import io.vertx.circuitbreaker.OpenCircuitException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
 import io.vertx.ext.mongo.FindOptions;
 import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.MongoClientBulkWriteResult;
+import io.vertx.ext.mongo.MongoClientDeleteResult;
+import io.vertx.ext.mongo.MongoClientUpdateResult;
+import org.bson.types.ObjectId;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.ssarge.VertxClass.AppConstants.*;
@@ -21,112 +48,342 @@ public class MongoManager {
 
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MongoManager.class);
+    private static final int DEFAULT_PAGE_SIZE = 30;
+    private static final Set<String> COMMANDS = Set.of(CREATE_PRODUCT, BULK_CREATE_PRODUCTS, GET_ALL_PRODUCTS,
+            STREAM_PRODUCTS, GET_PRODUCT, GET_PRODUCT_BY_NUMBER, UPDATE_PRODUCT, DELETE_PRODUCT);
+    private static final String UNKNOWN_COMMAND = "unknown";
 
     private final MongoClient mongoClient;
+    private final JsonObject config;
+    private final int streamBatchSize;
+    private final long streamAckTimeout;
+    private final int bulkChunkSize;
+
+    private final SingleFlight<String, ProductReply> productReads = new SingleFlight<>();
+    private final Map<Message<Object>, CommandStart> commandStarts = new IdentityHashMap<>();
+    // updates and deletes answered, so reads in flight meanwhile do not cache what they read
+    private final Invalidations writes = new Invalidations(10_000);
+
+    private SharedProductCache sharedCache = SharedProductCache.disabled();
+    private CreateBatcher createBatcher;
+    private MongoBreaker breaker = MongoBreaker.disabled();
+    private ProductCache lastKnownGood;
 
     public MongoManager(MongoClient mongoClient) {
+        this(mongoClient, new JsonObject());
+    }
+
+    public MongoManager(MongoClient mongoClient, JsonObject config) {
         this.mongoClient = mongoClient;
+        this.config = config;
+        this.streamBatchSize = config.getInteger("mongodb.stream.batchSize", 500);
+        this.streamAckTimeout = config.getLong("mongodb.stream.ackTimeout", 60_000L);
+        this.bulkChunkSize = config.getInteger("mongodb.bulk.chunkSize", 1000);
     }
 
     public void registerConsumer(Vertx vertx) {
-        vertx.eventBus().consumer("com.ssarge.mongoservice", message -> {
-            JsonObject input = new JsonObject(message.body().toString());
-            switch (input.getString("cmd")) {
+        ProductCodecs.register(vertx.eventBus());
+        sharedCache = SharedProductCache.create(vertx, config);
+        createBatcher = CreateBatcher.fromConfig(vertx, mongoClient, config);
+        breaker = MongoBreaker.create(vertx, config);
+        if (breaker.isEnabled()) {
+            lastKnownGood = new ProductCache("stale", config.getInteger("mongodb.breaker.staleMaxSize", 10_000),
+                    Long.MAX_VALUE);
+        }
+        Handler<Message<Object>> commands = message -> {
+            long start = System.nanoTime();
+            ProductCommand input;
+            try {
+                input = ProductCommand.from(message.body());
+            } catch (Exception exc) {
+                LOGGER.error("Unable to read command " + exc.getMessage(), exc);
+                commandStarts.put(message, new CommandStart(UNKNOWN_COMMAND, start));
+                reply(message, ProductReply.error("Malformed command"));
+                return;
+            }
+            commandStarts.put(message, new CommandStart(commandName(input.getCmd()), start));
+            switch (Optional.ofNullable(input.getCmd()).orElse("")) {
                 case CREATE_PRODUCT:
-                    createProduct(input, message);
+                    createProduct(input.getValue(), message);
+                    break;
+                case BULK_CREATE_PRODUCTS:
+                    bulkCreateProducts(input.getValues(), message);
                     break;
                 case GET_ALL_PRODUCTS:
-                    getAllProducts(message);
+                    getAllProducts(input, message);
+                    break;
+                case STREAM_PRODUCTS:
+                    // batches are answered by the replier; only the time to open the cursor is recorded
+                    commandTimer(message, Meters.SUCCESS);
+                    streamProducts(input.getFields(), message);
                     break;
                 case GET_PRODUCT:
-                    getProduct(input.getString("id"), message);
+                    getProduct(input.getId(), input.getFields(), message);
+                    break;
+                case GET_PRODUCT_BY_NUMBER:
+                    getProductByNumber(input.getNumber(), input.getFields(), message);
                     break;
                 case UPDATE_PRODUCT:
-                    updateProduct(input.getString("id"), input, message);
+                    updateProduct(input.getId(), input.getValue(), message);
                     break;
                 case DELETE_PRODUCT:
-                    deleteProduct(input.getString("id"), message);
+                    deleteProduct(input.getId(), message);
                     break;
                 default:
-                    message.reply(new JsonObject().put("error", "Unrecognized command"));
+                    reply(message, ProductReply.error("Unrecognized command"));
             }
-        });
+        };
+        if (config.getBoolean("eventbus.local", false)) {
+            // only the api verticles of this Vert.x send here (CombinedLauncher); nothing is advertised to the cluster
+            vertx.eventBus().localConsumer(MONGO_SERVICE, commands);
+        } else {
+            vertx.eventBus().consumer(MONGO_SERVICE, commands);
+        }
     }
 
-    private void getAllProducts(Message<Object> message) {
-        FindOptions findOptions = new FindOptions();
-        findOptions.setLimit(30);
+    /**
+     * Keyset paging: each page is an {@code _id > after} range scan in {@code _id} order. One extra document is read
+     * to tell whether another page exists, in which case the reply carries the last returned id as {@code next}.
+     */
+    private void getAllProducts(ProductCommand input, Message<Object> message) {
+        int limit = Optional.ofNullable(input.getLimit()).orElse(DEFAULT_PAGE_SIZE);
+        JsonObject query = Optional.ofNullable(input.getAfter())
+                .map(after -> new JsonObject().put("_id", new JsonObject().put("$gt", idValue(after))))
+                .orElseGet(JsonObject::new);
+        FindOptions findOptions = new FindOptions()
+                .setSort(new JsonObject().put("_id", 1))
+                .setLimit(limit + 1)
+                .setFields(ProductFields.projection(input.getFields()));
         try {
-            mongoClient.findWithOptions("products", new JsonObject(), findOptions, results -> {
+            breaker.<List<JsonObject>>execute(done -> mongoClient.findWithOptions("products", query, findOptions,
+                    Meters.timeMongo("find", done)), results -> {
                 if (results.succeeded()) {
                     List<JsonObject> resultList = results.result();
-                    LOGGER.info("getAllProducts returning " + resultList.size() + " results");
-                    List<Product> products = resultList.stream().map(obj -> Product.builder()
-                            .id(obj.getString("_id"))
-                            .number(obj.getString("number"))
-                            .description(obj.getString("description"))
-                            .build())
+                    boolean hasMore = resultList.size() > limit;
+                    List<Product> products = resultList.stream()
+                            .limit(limit)
+                            .map(MongoManager::toProduct)
                             .collect(Collectors.toList());
-                    message.reply(new JsonObject().put("products", new JsonArray(products)).toString());
+                    LOGGER.info("getAllProducts returning " + products.size() + " results");
+                    if (input.getFields() == null) {
+                        products.forEach(this::remember);
+                    }
+                    String next = hasMore ? products.get(products.size() - 1).getId() : null;
+                    reply(message, ProductReply.of(products, next));
                 } else {
-                    message.reply(new JsonObject().put("error", Optional.ofNullable(results.cause())
-                            .map(Throwable::getMessage).orElse("No results found")).toString());
+                    reply(message, failure(Optional.ofNullable(results.cause())
+                            .map(Throwable::getMessage).orElse("No results found"), results.cause()));
                 }
             });
         } catch (Exception exc) {
             LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
-            message.reply(new JsonObject().put("error", "There were problems receiving the data from the backend"));
+            reply(message, ProductReply.error("There were problems receiving the data from the backend"));
+        }
+    }
+
+    private void streamProducts(List<String> fields, Message<Object> message) {
+        if (breaker.isOpen()) {
+            reply(message, ProductReply.unavailable("The backend database is unavailable"));
+            return;
+        }
+        try {
+            FindOptions findOptions = new FindOptions().setBatchSize(streamBatchSize)
+                    .setFields(ProductFields.projection(fields));
+            ReadStream<JsonObject> stream = mongoClient.findBatchWithOptions("products", new JsonObject(), findOptions);
+            new ProductBatchReplier(stream, MongoManager::toProduct, streamBatchSize, streamAckTimeout).start(message);
+        } catch (Exception exc) {
+            LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
+            reply(message, ProductReply.error("There were problems receiving the data from the backend"));
+        }
+    }
+
+    /**
+     * A field selection is projected from a cached product, or read with a mongo projection.
+     */
+    private void getProduct(String id, List<String> fields, Message<Object> message) {
+        sharedCache.get(id, cached -> cached.ifPresentOrElse(
+                product -> reply(message, ProductReply.of(ProductFields.project(product, fields))),
+                () -> findProduct(id, fields, message)));
+    }
+
+    /**
+     * Concurrent reads of the same id and fields share one findOne. Only full products are cached.
+     */
+    private void findProduct(String id, List<String> fields, Message<Object> message) {
+        String key = fields == null ? id : id + "?" + String.join(",", fields);
+        try {
+            productReads.execute(key, done -> {
+                // taken when the read starts, so a write answered while it is in flight keeps it out of the caches
+                long generation = writes.generation();
+                breaker.<JsonObject>execute(found ->
+                        mongoClient.findOne("products", new JsonObject().put("_id", id),
+                                ProductFields.projection(fields), Meters.timeMongo("findOne", found)), results -> {
+                            if (results.succeeded() && results.result() != null) {
+                                LOGGER.info("getProductById returning results");
+                                Product product = toProduct(results.result());
+                                if (fields == null && !writes.changedSince(product.getId(), generation)) {
+                                    sharedCache.put(product);
+                                    remember(product);
+                                }
+                                done.handle(ProductReply.of(product));
+                            } else if (results.failed() && lastKnownGood != null && lastKnownGood.get(id).isPresent()) {
+                                LOGGER.warn("Serving last known copy of " + id + ": " + results.cause().getMessage());
+                                done.handle(ProductReply.stale(
+                                        ProductFields.project(lastKnownGood.get(id).get(), fields)));
+                            } else if (results.succeeded()) {
+                                done.handle(ProductReply.notFound("No product with id " + id));
+                            } else {
+                                done.handle(failure(Optional.ofNullable(results.cause())
+                                        .map(Throwable::getMessage).orElse("No results found"), results.cause()));
+                            }
+                        });
+            }, result -> reply(message, result));
+        } catch (Exception exc) {
+            LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
+            reply(message, ProductReply.error("There were problems receiving the data from the backend"));
         }
     }
 
-    private void getProduct(String id, Message<Object> message) {
+    /**
+     * A point read on the unique number index ({@link ProductIndexes#NUMBER}). The product cache is keyed by id, so
+     * it is not consulted, but a full product found here is cached for reads by id.
+     */
+    private void getProductByNumber(String number, List<String> fields, Message<Object> message) {
+        if (number == null) {
+            reply(message, ProductReply.error("A product number is required"));
+            return;
+        }
+        String key = "number:" + number + (fields == null ? "" : "?" + String.join(",", fields));
         try {
-            mongoClient.findOne("products", new JsonObject().put("_id", id), null, results -> {
+            productReads.execute(key, done -> {
+                // taken when the read starts, so a write answered while it is in flight keeps it out of the caches
+                long generation = writes.generation();
+                breaker.<JsonObject>execute(found ->
+                        mongoClient.findOne("products", new JsonObject().put("number", number),
+                                ProductFields.projection(fields), Meters.timeMongo("findOne", found)), results -> {
+                            if (results.succeeded() && results.result() != null) {
+                                LOGGER.info("getProductByNumber returning results");
+                                Product product = toProduct(results.result());
+                                if (fields == null && !writes.changedSince(product.getId(), generation)) {
+                                    sharedCache.put(product);
+                                    remember(product);
+                                }
+                                done.handle(ProductReply.of(product));
+                            } else if (results.succeeded()) {
+                                done.handle(ProductReply.notFound("No product with number " + number));
+                            } else {
+                                done.handle(failure(results.cause().getMessage(), results.cause()));
+                            }
+                        });
+            }, result -> reply(message, result));
+        } catch (Exception exc) {
+            LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
+            reply(message, ProductReply.error("There were problems receiving the data from the backend"));
+        }
+    }
+
+    private void createProduct(Product product, Message<Object> message) {
+        try {
+            Handler<AsyncResult<String>> saved = results -> {
                 if (results.succeeded()) {
-                    JsonObject obj = results.result();
-                    Product product = Product.builder()
-                            .id(obj.getString("_id"))
-                            .number(obj.getString("number"))
-                            .description(obj.getString("description"))
+                    Product created = Product.builder()
+                            .id(results.result())
+                            .number(product.getNumber())
+                            .description(product.getDescription())
                             .build();
-                    LOGGER.info("getProductById returning results");
-                    message.reply(JsonObject.mapFrom(product).toString());
+                    sharedCache.put(created);
+                    remember(created);
+                    reply(message, ProductReply.of(created));
                 } else {
-                    message.reply(new JsonObject().put("message", Optional.ofNullable(results.cause())
-                            .map(Throwable::getMessage).orElse("No results found")).toString());
+                    LOGGER.error("Failed to save product to database");
+                    reply(message, failure("Unable to create new product", results.cause()));
                 }
-            });
+            };
+            if (createBatcher != null) {
+                breaker.execute(done -> createBatcher.insert(toDocument(product), done), saved);
+            } else {
+                breaker.execute(done -> mongoClient.save("products", toDocument(product), Meters.timeMongo("save", done)),
+                        saved);
+            }
         } catch (Exception exc) {
             LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
-            message.reply(new JsonObject().put("error", "There were problems receiving the data from the backend").toString());
+            reply(message, ProductReply.error("There were problems posting data to the backend database"));
         }
     }
 
-    private void createProduct(JsonObject input, Message<Object> message) {
+    private void bulkCreateProducts(List<Product> products, Message<Object> message) {
+        if (products == null) {
+            reply(message, ProductReply.error("No products to create"));
+            return;
+        }
+        insertChunk(products, 0, new ArrayList<>(products.size()), message);
+    }
+
+    /**
+     * Inserts products[from, from + chunk size) as one unordered bulk write, records a result per item and moves on
+     * to the next chunk. Ids are generated here so every item can be reported back, even when the chunk partly fails.
+     */
+    private void insertChunk(List<Product> products, int from, List<ItemResult> results, Message<Object> message) {
+        if (from >= products.size()) {
+            LOGGER.info("bulkCreateProducts processed " + results.size() + " products");
+            reply(message, ProductReply.ofResults(results));
+            return;
+        }
+        int to = Math.min(from + bulkChunkSize, products.size());
+        List<String> ids = new ArrayList<>(to - from);
+        List<BulkOperation> operations = new ArrayList<>(to - from);
+        for (Product product : products.subList(from, to)) {
+            String id = new ObjectId().toHexString();
+            ids.add(id);
+            operations.add(BulkOperation.createInsert(toDocument(product).put("_id", id)));
+        }
         try {
-            JsonObject body = input.getJsonObject("value");
-            Product product = body.mapTo(Product.class);
-            mongoClient.save("products", JsonObject.mapFrom(product), results -> {
-                if (results.succeeded()) {
-                    product.setId(results.result());
-                    message.reply(JsonObject.mapFrom(product).toString());
-                } else {
-                    LOGGER.error("Failed to save product to database");
-                    message.reply(new JsonObject().put("error", "Unable to create new product").toString());
+            breaker.<MongoClientBulkWriteResult>execute(done -> mongoClient.bulkWriteWithOptions("products", operations,
+                    new BulkWriteOptions(false), Meters.timeMongo("bulkWrite", done)), response -> {
+                Map<Integer, String> errors = response.succeeded()
+                        ? Collections.emptyMap()
+                        : writeErrors(response.cause(), ids.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    results.add(errors.containsKey(i)
+                            ? ItemResult.failed(from + i, errors.get(i))
+                            : ItemResult.ok(from + i, ids.get(i)));
                 }
+                insertChunk(products, to, results, message);
             });
         } catch (Exception exc) {
             LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
-            message.reply(new JsonObject().put("error", "There were problems posting data to the backend database").toString());
+            for (int i = from; i < to; i++) {
+                results.add(ItemResult.failed(i, "There were problems posting data to the backend database"));
+            }
+            insertChunk(products, to, results, message);
         }
     }
 
-    private void updateProduct(String id, JsonObject input, Message<Object> message) {
+    /**
+     * Maps a failed bulk write to chunk index -> error. Only a {@link MongoBulkWriteException} tells which items
+     * failed; any other failure is taken to have failed the whole chunk.
+     */
+    static Map<Integer, String> writeErrors(Throwable cause, int chunkSize) {
+        Map<Integer, String> errors = new HashMap<>();
+        if (cause instanceof MongoBulkWriteException) {
+            ((MongoBulkWriteException) cause).getWriteErrors()
+                    .forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+        } else {
+            LOGGER.error("Bulk write failed " + Optional.ofNullable(cause).map(Throwable::getMessage).orElse(""), cause);
+            for (int i = 0; i < chunkSize; i++) {
+                errors.put(i, "Unable to create new product");
+            }
+        }
+        return errors;
+    }
+
+    private void updateProduct(String id, Product value, Message<Object> message) {
         JsonObject query = new JsonObject().put("_id", id);
-        JsonObject update = input.getJsonObject("value");
-        update.put("_id", id);
         try {
-            mongoClient.replaceDocuments("products", query, update, response -> {
+            JsonObject update = toDocument(value).put("_id", id);
+            breaker.<MongoClientUpdateResult>execute(done -> mongoClient.replaceDocuments("products", query, update,
+                    Meters.timeMongo("replace", done)), response -> {
+                writes.invalidate(id);
                 if (response.succeeded()) {
                     LOGGER.info("Product with id " + id + " has been updated");
                     Product product = Product.builder()
@@ -134,38 +391,140 @@ public class MongoManager {
                             .description(update.getString("description"))
                             .number(update.getString("number"))
                             .build();
-                    message.reply(JsonObject.mapFrom(product).toString());
+                    if (Optional.ofNullable(response.result()).map(MongoClientUpdateResult::getDocMatched).orElse(0L) > 0) {
+                        sharedCache.put(product);
+                        remember(product);
+                    } else {
+                        sharedCache.remove(id);
+                        forget(id);
+                    }
+                    reply(message, ProductReply.of(product));
                 } else {
                     LOGGER.error("Therew were problems updating record " + id + " in the database");
-                    message.reply(new JsonObject()
-                            .put("error", "There were problems updating the record on the backend")
-                            .put("cause", Optional.ofNullable(response.cause()).map(Throwable::getMessage).orElse("Could not update record"))
-                            .toString());
+                    // a refused call never reached the database, so the cached copies are still current
+                    if (!(response.cause() instanceof OpenCircuitException)) {
+                        sharedCache.remove(id);
+                        forget(id);
+                    }
+                    reply(message, response.cause() instanceof OpenCircuitException
+                            ? ProductReply.unavailable("There were problems updating the record on the backend")
+                            : ProductReply.error("There were problems updating the record on the backend",
+                            Optional.ofNullable(response.cause()).map(Throwable::getMessage).orElse("Could not update record")));
                 }
             });
         } catch (Exception exc) {
             LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
-            message.reply(new JsonObject().put("error", "There were problems updating data to the backend database").toString());
+            reply(message, ProductReply.error("There were problems updating data to the backend database"));
         }
     }
 
     private void deleteProduct(String id, Message<Object> message) {
         JsonObject query = new JsonObject().put("_id", id);
         try {
-            mongoClient.removeDocument("products", query, response -> {
+            sharedCache.remove(id);
+            forget(id);
+            breaker.<MongoClientDeleteResult>execute(done -> mongoClient.removeDocument("products", query,
+                    Meters.timeMongo("remove", done)), response -> {
+                writes.invalidate(id);
                 if (response.succeeded()) {
                     LOGGER.info("Product with id " + id + " has been removed", id);
-                    message.reply(new JsonObject().put("status", "removed").put("id", id).toString());
+                    reply(message, ProductReply.removed(id));
                 } else {
-                    message.reply(new JsonObject()
-                            .put("error", "There were problems removing the record from the backend")
-                            .put("cause", Optional.ofNullable(response.cause()).map(Throwable::getMessage).orElse("Could not delete record"))
-                            .toString());
+                    reply(message, response.cause() instanceof OpenCircuitException
+                            ? ProductReply.unavailable("There were problems removing the record from the backend")
+                            : ProductReply.error("There were problems removing the record from the backend",
+                            Optional.ofNullable(response.cause()).map(Throwable::getMessage).orElse("Could not delete record")));
                 }
             });
         } catch (Exception exc) {
             LOGGER.error("MongoDB failed with exception " + exc.getMessage(), exc);
-            message.reply(new JsonObject().put("error", "There were problems deleting record " + id + " from the backend database").toString());
+            reply(message, ProductReply.error("There were problems deleting record " + id + " from the backend database"));
+        }
+    }
+
+    /**
+     * Commands refused by the open breaker are flagged as unavailable, so the api can tell clients to come back later.
+     */
+    private static ProductReply failure(String error, Throwable cause) {
+        return cause instanceof OpenCircuitException ? ProductReply.unavailable(error) : ProductReply.error(error);
+    }
+
+    /**
+     * Keeps the latest copy of each product read or written, to serve while the breaker is open.
+     */
+    private void remember(Product product) {
+        if (lastKnownGood != null && product.getId() != null) {
+            lastKnownGood.put(product);
+        }
+    }
+
+    private void forget(String id) {
+        if (lastKnownGood != null) {
+            lastKnownGood.evict(id);
+        }
+    }
+
+    /**
+     * Typed commands get a typed reply (binary codec); legacy json commands keep getting the json string reply.
+     */
+    private void reply(Message<Object> message, ProductReply reply) {
+        commandTimer(message, reply.failed() ? Meters.ERROR : Meters.SUCCESS);
+        if (message.body() instanceof ProductCommand) {
+            message.reply(reply);
+        } else {
+            message.reply(reply.toJson().toString());
+        }
+    }
+
+    /**
+     * Records the time from receiving the command to answering it.
+     */
+    private void commandTimer(Message<Object> message, String outcome) {
+        CommandStart start = commandStarts.remove(message);
+        if (start != null) {
+            Meters.timer("mongo.commands", "cmd", start.cmd, "outcome", outcome)
+                    .record(System.nanoTime() - start.nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Known command names only, so that malformed input cannot create new series.
+     */
+    private static String commandName(String cmd) {
+        return cmd != null && COMMANDS.contains(cmd) ? cmd : UNKNOWN_COMMAND;
+    }
+
+    /**
+     * Ids are stored as ObjectIds ("useObjectId"), which the client only converts for a top level {@code _id}.
+     */
+    private static Object idValue(String id) {
+        return ObjectId.isValid(id) ? new JsonObject().put("$oid", id) : id;
+    }
+
+    static Product toProduct(JsonObject obj) {
+        return Product.builder()
+                .id(obj.getString("_id"))
+                .number(obj.getString("number"))
+                .description(obj.getString("description"))
+                .build();
+    }
+
+    private static JsonObject toDocument(Product product) {
+        return new JsonObject()
+                .put("number", product.getNumber())
+                .put("description", product.getDescription());
+    }
+
+    /**
+     * The command name, taken when the command is read, and the time it arrived.
+     */
+    private static final class CommandStart {
+        private final String cmd;
+        private final long nanos;
+
+        private CommandStart(String cmd, long nanos) {
+            this.cmd = cmd;
+            this.nanos = nanos;
         }
     }
 }
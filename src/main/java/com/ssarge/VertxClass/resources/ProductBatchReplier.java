@@ -0,0 +1,98 @@
+package com.ssarge.VertxClass.resources;
+
+import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.messages.ProductCommand;
+import com.ssarge.VertxClass.messages.ProductReply;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.ssarge.VertxClass.AppConstants.STREAM_NEXT;
+
+/**
+ * Mongo side of a streaming command: replies with one batch of documents at a time and keeps the cursor paused
+ * until the requester acknowledges the batch with {@code stream_next}. Anything else, or no answer within the ack
+ * timeout, closes the cursor.
+ */
+class ProductBatchReplier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductBatchReplier.class);
+
+    private final ReadStream<JsonObject> stream;
+    private final Function<JsonObject, Product> mapper;
+    private final int batchSize;
+    private final DeliveryOptions ackOptions;
+
+    private List<Product> batch;
+    private Message<?> current;
+    private Throwable failure;
+    private boolean finished;
+
+    ProductBatchReplier(ReadStream<JsonObject> stream, Function<JsonObject, Product> mapper, int batchSize, long ackTimeout) {
+        this.stream = stream;
+        this.mapper = mapper;
+        this.batchSize = batchSize;
+        this.ackOptions = new DeliveryOptions().setSendTimeout(ackTimeout);
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    void start(Message<?> request) {
+        current = request;
+        stream.exceptionHandler(this::onFailure)
+                .endHandler(v -> onEnd())
+                .handler(doc -> {
+                    batch.add(mapper.apply(doc));
+                    if (batch.size() >= batchSize) {
+                        stream.pause();
+                        sendBatch();
+                    }
+                });
+    }
+
+    private void sendBatch() {
+        Message<?> message = current;
+        current = null;
+        List<Product> products = batch;
+        batch = new ArrayList<>(batchSize);
+        message.replyAndRequest(ProductReply.builder().products(products).status(ProductReply.STREAM_MORE).build(),
+                ackOptions, ack -> {
+                    if (ack.succeeded() && STREAM_NEXT.equals(ProductCommand.from(ack.result().body()).getCmd())) {
+                        current = ack.result();
+                        if (failure != null) {
+                            onFailure(failure);
+                        } else if (finished) {
+                            onEnd();
+                        } else {
+                            stream.resume();
+                        }
+                    } else {
+                        LOGGER.info("Product stream cancelled by requester");
+                        stream.handler(null);
+                    }
+                });
+    }
+
+    private void onEnd() {
+        finished = true;
+        if (current != null) {
+            current.reply(ProductReply.builder().products(batch).status(ProductReply.STREAM_DONE).build());
+            current = null;
+        }
+    }
+
+    private void onFailure(Throwable cause) {
+        LOGGER.error("Product stream failed with exception " + cause.getMessage(), cause);
+        failure = cause;
+        if (current != null) {
+            current.reply(ProductReply.error("There were problems receiving the data from the backend"));
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ssarge.VertxClass.resources;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.IndexOptions;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The indexes the mongo service relies on, ensured by MongoDBVerticle at startup. Creating an index that already
+ * exists with the same options does nothing, so every start (and every verticle instance) can ask for all of them.
+ */
+public final class ProductIndexes {
+
+    public static final String COLLECTION = "products";
+    public static final String NUMBER = "number_unique";
+
+    /**
+     * One entry per index: its key and options, name included.
+     */
+    static final List<Definition> DEFINITIONS = List.of(
+            // point reads by business number (get_product_by_number); products without a number are left out
+            new Definition(new JsonObject().put("number", 1), new IndexOptions()
+                    .name(NUMBER)
+                    .unique(true)
+                    .partialFilterExpression(new JsonObject().put("number", new JsonObject().put("$type", "string")))));
+
+    private ProductIndexes(){}
+
+    /**
+     * Creates every index, completing once all of them exist or with the first failure (e.g. duplicate numbers
+     * already stored).
+     */
+    public static void ensure(MongoClient mongoClient, Handler<AsyncResult<Void>> handler) {
+        List<Future<Void>> created = DEFINITIONS.stream()
+                .map(definition -> {
+                    Promise<Void> done = Promise.promise();
+                    mongoClient.createIndexWithOptions(COLLECTION, definition.key, definition.options, done);
+                    return done.future();
+                })
+                .collect(Collectors.toList());
+        // CompositeFuture.all only takes a raw list in vert.x 3.8
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        List<Future> all = (List<Future>) (List<?>) created;
+        CompositeFuture.all(all).setHandler(result -> handler.handle(result.mapEmpty()));
+    }
+
+    static final class Definition {
+        final JsonObject key;
+        final IndexOptions options;
+
+        private Definition(JsonObject key, IndexOptions options) {
+            this.key = key;
+            this.options = options;
+        }
+    }
+}
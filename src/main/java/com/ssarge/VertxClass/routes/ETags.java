@@ -0,0 +1,89 @@
+package com.ssarge.VertxClass.routes;
+
+import com.ssarge.VertxClass.entity.Product;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Strong ETags hashed straight from product fields, so a matching If-None-Match can be answered without
+ * serializing anything.
+ */
+final class ETags {
+
+    private static final int TAG_BYTES = 16;
+
+    private ETags(){}
+
+    static String of(Product product) {
+        MessageDigest digest = sha256();
+        update(digest, product);
+        return tag(digest);
+    }
+
+    static String of(List<Product> products, String next) {
+        MessageDigest digest = sha256();
+        products.forEach(product -> update(digest, product));
+        update(digest, next);
+        return tag(digest);
+    }
+
+    /**
+     * Tag for another representation of the same content, e.g. the pretty printed one.
+     */
+    static String variant(String etag, String name) {
+        return etag.substring(0, etag.length() - 1) + "-" + name + "\"";
+    }
+
+    /**
+     * If-None-Match uses weak comparison, so W/ prefixes are ignored; "*" matches anything.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void update(MessageDigest digest, Product product) {
+        update(digest, product.getId());
+        update(digest, product.getNumber());
+        update(digest, product.getDescription());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+        } else {
+            digest.update((byte) 1);
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+
+    private static String tag(MessageDigest digest) {
+        byte[] hash = digest.digest();
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, TAG_BYTES)) + "\"";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException(exc);
+        }
+    }
+}
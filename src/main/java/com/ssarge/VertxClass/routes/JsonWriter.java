@@ -0,0 +1,100 @@
+package com.ssarge.VertxClass.routes;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.messages.ProductFields;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes response bodies with a streaming generator straight into the buffer handed to the response: compact unless
+ * asked to pretty print, with no intermediate maps or strings.
+ * <p>
+ * The buffer is a plain heap buffer. Vert.x 3.8 wraps whatever it is given as unreleasable, so pooled memory
+ * would never make it back to the pool.
+ */
+final class JsonWriter {
+
+    private static final JsonFactory FACTORY = Json.mapper.getFactory();
+    private static final int INITIAL_CAPACITY = 256;
+    // a compact product is ~100 bytes with typical ids and descriptions; sizing pages up front avoids regrowing
+    private static final int PRODUCT_SIZE_HINT = 112;
+
+    private JsonWriter(){}
+
+    @FunctionalInterface
+    private interface Body {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    static Buffer product(Product product, boolean pretty) {
+        return product(product, pretty, null);
+    }
+
+    /**
+     * Only the selected fields ({@link ProductFields}) are written; null writes them all.
+     */
+    static Buffer product(Product product, boolean pretty, List<String> fields) {
+        return write(INITIAL_CAPACITY, pretty, generator -> writeProduct(generator, product, fields));
+    }
+
+    static Buffer page(List<Product> products, String next, boolean pretty) {
+        return page(products, next, pretty, null);
+    }
+
+    static Buffer page(List<Product> products, String next, boolean pretty, List<String> fields) {
+        return write(INITIAL_CAPACITY + products.size() * PRODUCT_SIZE_HINT, pretty, generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("products");
+            for (Product product : products) {
+                writeProduct(generator, product, fields);
+            }
+            generator.writeEndArray();
+            if (next != null) {
+                generator.writeStringField("next", next);
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * Anything the vert.x object mapper can serialize, including JsonObject and JsonArray.
+     */
+    static Buffer value(Object value, boolean pretty) {
+        return write(INITIAL_CAPACITY, pretty, generator -> generator.writeObject(value));
+    }
+
+    private static void writeProduct(JsonGenerator generator, Product product, List<String> fields) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField(ProductFields.ID, product.getId());
+        if (ProductFields.includes(fields, ProductFields.NUMBER)) {
+            generator.writeStringField(ProductFields.NUMBER, product.getNumber());
+        }
+        if (ProductFields.includes(fields, ProductFields.DESCRIPTION)) {
+            generator.writeStringField(ProductFields.DESCRIPTION, product.getDescription());
+        }
+        generator.writeEndObject();
+    }
+
+    private static Buffer write(int capacity, boolean pretty, Body body) {
+        ByteBuf byteBuf = Unpooled.buffer(capacity);
+        try (JsonGenerator generator = FACTORY.createGenerator((OutputStream) new ByteBufOutputStream(byteBuf))) {
+            if (pretty) {
+                generator.useDefaultPrettyPrinter();
+            }
+            body.write(generator);
+        } catch (IOException | RuntimeException exc) {
+            throw new EncodeException("Failed to encode as JSON: " + exc.getMessage());
+        }
+        return Buffer.buffer(byteBuf);
+    }
+}
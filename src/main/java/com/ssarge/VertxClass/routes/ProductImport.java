@@ -0,0 +1,245 @@
+package com.ssarge.VertxClass.routes;
+
+import com.ssarge.VertxClass.admission.RejectedException;
+import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.messages.ItemResult;
+import com.ssarge.VertxClass.messages.ProductCommand;
+import com.ssarge.VertxClass.messages.ProductReply;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static com.ssarge.VertxClass.AppConstants.BULK_CREATE_PRODUCTS;
+
+/**
+ * Imports newline delimited JSON products from an upload as it arrives. Lines are parsed one at a time and sent to
+ * the mongo service in {@code bulk_create_products} batches; the upload is paused while a batch is in flight, so at
+ * most one batch and one line are held in memory whatever the upload size.
+ * <p>
+ * Reports, in order: a {@code {"line", "error"}} object for each of the first {@code maxReportedFailures} lines that
+ * could not be imported, and a {@code {"progress": {...}}} object after each batch. Completes with the totals, or
+ * fails when the mongo service could not take a batch (IllegalArgumentException for a line over
+ * {@code maxLineBytes}); {@link #getLines()} then tells up to which line the upload
+ * has been accounted for, so it can be resumed from the next one.
+ * <p>
+ * Only used from the event loop of the request.
+ */
+class ProductImport {
+
+    private final RecordParser parser;
+    private final int batchSize;
+    private final int maxLineBytes;
+    private final int maxReportedFailures;
+    private final BiConsumer<ProductCommand, Handler<AsyncResult<Message<ProductReply>>>> sender;
+
+    private List<Product> batch;
+    private List<Long> batchLines;
+    private long line;
+    private long lines;
+    private long inserted;
+    private long failed;
+    private boolean inFlight;
+    private boolean uploadEnded;
+    private boolean finished;
+
+    private Handler<JsonObject> reportHandler = report -> {};
+    private Handler<AsyncResult<JsonObject>> doneHandler = done -> {};
+
+    /**
+     * @param sender sends a command to the mongo service, e.g. through admission control
+     */
+    ProductImport(ReadStream<Buffer> upload, int batchSize, int maxLineBytes, int maxReportedFailures,
+                  BiConsumer<ProductCommand, Handler<AsyncResult<Message<ProductReply>>>> sender) {
+        this.parser = RecordParser.newDelimited("\n", new Terminated(upload)).maxRecordSize(maxLineBytes);
+        this.batchSize = batchSize;
+        this.maxLineBytes = maxLineBytes;
+        this.maxReportedFailures = maxReportedFailures;
+        this.sender = sender;
+        this.batch = new ArrayList<>(batchSize);
+        this.batchLines = new ArrayList<>(batchSize);
+    }
+
+    ProductImport reportHandler(Handler<JsonObject> handler) {
+        this.reportHandler = handler;
+        return this;
+    }
+
+    void start(Handler<AsyncResult<JsonObject>> handler) {
+        this.doneHandler = handler;
+        // the parser fails with an IllegalStateException on a line over maxRecordSize; anything else is the upload's
+        parser.exceptionHandler(cause -> fail(cause instanceof IllegalStateException
+                ? new IllegalArgumentException("Line " + (line + 1) + " is longer than " + maxLineBytes + " bytes")
+                : cause))
+                .endHandler(v -> {
+                    uploadEnded = true;
+                    if (!inFlight) {
+                        flush();
+                    }
+                })
+                .handler(this::onLine);
+    }
+
+    /**
+     * Stops reading, e.g. once the client has gone away; nothing more is reported.
+     */
+    void cancel() {
+        finished = true;
+        parser.handler(null);
+    }
+
+    /**
+     * Lines whose outcome is known: every line up to this one was imported or reported as failed.
+     */
+    long getLines() {
+        return lines;
+    }
+
+    private void onLine(Buffer record) {
+        line++;
+        String text = record.toString().trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        try {
+            batch.add(new JsonObject(text).mapTo(Product.class));
+            batchLines.add(line);
+        } catch (Exception exc) {
+            failure(line, "Malformed product");
+        }
+        if (batch.size() >= batchSize) {
+            send();
+        }
+    }
+
+    private void flush() {
+        if (!batch.isEmpty()) {
+            send();
+        } else if (!finished) {
+            lines = line;
+            finished = true;
+            doneHandler.handle(Future.succeededFuture(totals()));
+        }
+    }
+
+    private void send() {
+        List<Product> products = batch;
+        List<Long> productLines = batchLines;
+        long lastLine = line;
+        batch = new ArrayList<>(batchSize);
+        batchLines = new ArrayList<>(batchSize);
+        inFlight = true;
+        parser.pause();
+        sender.accept(ProductCommand.builder().cmd(BULK_CREATE_PRODUCTS).values(products).build(), reply -> {
+            inFlight = false;
+            if (finished) {
+                return;
+            }
+            if (reply.failed()) {
+                fail(reply.cause());
+                return;
+            }
+            ProductReply result = reply.result().body();
+            if (result.failed()) {
+                fail(result.isUnavailable()
+                        ? new RejectedException(result.getError())
+                        : new IllegalStateException(result.getError()));
+                return;
+            }
+            for (ItemResult item : result.getResults()) {
+                if (item.getError() != null) {
+                    failure(productLines.get(item.getIndex()), item.getError());
+                } else {
+                    inserted++;
+                }
+            }
+            lines = lastLine;
+            reportHandler.handle(new JsonObject().put("progress", totals()));
+            if (uploadEnded) {
+                flush();
+            } else {
+                parser.resume();
+            }
+        });
+    }
+
+    private void failure(long failedLine, String error) {
+        failed++;
+        if (failed <= maxReportedFailures) {
+            reportHandler.handle(new JsonObject().put("line", failedLine).put("error", error));
+        }
+    }
+
+    private void fail(Throwable cause) {
+        if (!finished) {
+            cancel();
+            doneHandler.handle(Future.failedFuture(cause));
+        }
+    }
+
+    private JsonObject totals() {
+        return new JsonObject().put("lines", lines).put("inserted", inserted).put("failed", failed);
+    }
+
+    /**
+     * The upload with a newline added at its end: the record parser drops a last line that has no delimiter.
+     */
+    private static final class Terminated implements ReadStream<Buffer> {
+        private final ReadStream<Buffer> upload;
+        private Handler<Buffer> handler;
+
+        private Terminated(ReadStream<Buffer> upload) {
+            this.upload = upload;
+        }
+
+        @Override
+        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            upload.handler(handler);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+            upload.endHandler(endHandler == null ? null : v -> {
+                if (handler != null) {
+                    handler.handle(Buffer.buffer("\n"));
+                }
+                endHandler.handle(null);
+            });
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            upload.exceptionHandler(handler);
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> pause() {
+            upload.pause();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> resume() {
+            upload.resume();
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> fetch(long amount) {
+            upload.fetch(amount);
+            return this;
+        }
+    }
+}
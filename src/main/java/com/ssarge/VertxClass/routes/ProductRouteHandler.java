@@ -1,9 +1,32 @@
 package com.ssarge.VertxClass.routes;
 
+import com.ssarge.VertxClass.admission.Admission;
+import com.ssarge.VertxClass.admission.ConcurrencyLimiter;
+import com.ssarge.VertxClass.admission.MongoAvailability;
+import com.ssarge.VertxClass.admission.RejectedException;
+import com.ssarge.VertxClass.cache.ProductCache;
+import com.ssarge.VertxClass.cache.SingleFlight;
 import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.messages.PreferLocal;
+import com.ssarge.VertxClass.messages.ProductCodecs;
+import com.ssarge.VertxClass.messages.ProductCommand;
+import com.ssarge.VertxClass.messages.ProductFields;
+import com.ssarge.VertxClass.messages.ProductReply;
+import com.ssarge.VertxClass.messages.ProductStream;
+import com.ssarge.VertxClass.metrics.Meters;
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.http.HttpHeaders;
-import io.vertx.core.json.Json;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -12,9 +35,16 @@ import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static com.ssarge.VertxClass.AppConstants.*;
 
@@ -22,136 +52,602 @@ public class ProductRouteHandler implements RouteHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ProductRouteHandler.class);
     private static final String JSON_TYPE = "appication/json";
-    private static final String MONGO_SERVICE = "com.ssarge.mongoservice";
+    private static final String NDJSON_TYPE = "application/x-ndjson";
+    private static final int DEFAULT_PAGE_SIZE = 30;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Set<String> READ_COMMANDS = Set.of(GET_ALL_PRODUCTS, GET_PRODUCT, GET_PRODUCT_BY_NUMBER,
+            STREAM_PRODUCTS);
+
+    // shared by every instance of the handler, as the gauge reports one value per process
+    private static final AtomicInteger PENDING_REQUESTS = new AtomicInteger();
 
     private final Vertx vertx;
+    private final ProductCache productCache;
+    private final Admission admission;
+    private final MongoAvailability mongoAvailability;
+    private final DeliveryOptions readOptions;
+    private final DeliveryOptions writeOptions;
+    private final long bodyLimit;
+    private final int importBatchSize;
+    private final int importMaxLineBytes;
+    private final int importMaxReportedFailures;
+    private final SingleFlight<String, AsyncResult<Message<ProductReply>>> productReads = new SingleFlight<>();
 
-    public ProductRouteHandler(Vertx vertx) {
+    public ProductRouteHandler(Vertx vertx, JsonObject config) {
         this.vertx = vertx;
+        this.productCache = ProductCache.fromConfig(config);
+        this.admission = Admission.shared(vertx, config);
+        this.mongoAvailability = MongoAvailability.listen(vertx, config);
+        // with the mongo verticles in this Vert.x (CombinedLauncher) commands are delivered in process when possible
+        boolean preferLocal = config.getBoolean("eventbus.local", false);
+        this.readOptions = new DeliveryOptions().setSendTimeout(admission.getTimeoutMs(false)).setLocalOnly(preferLocal);
+        this.writeOptions = new DeliveryOptions().setSendTimeout(admission.getTimeoutMs(true)).setLocalOnly(preferLocal);
+        this.bodyLimit = config.getLong("http.bodyLimit", 10L * 1024 * 1024);
+        this.importBatchSize = config.getInteger("http.import.batchSize", 500);
+        this.importMaxLineBytes = config.getInteger("http.import.maxLineBytes", 64 * 1024);
+        this.importMaxReportedFailures = config.getInteger("http.import.maxReportedFailures", 1000);
+        ProductCodecs.register(vertx.eventBus());
+        Gauge.builder("eventbus.requests.pending", PENDING_REQUESTS, AtomicInteger::get)
+                .description("mongo service requests awaiting a reply")
+                .register(Meters.registry());
     }
 
     @Override
     public Router initializeRouter() {
         Router productRouter = Router.router(vertx);
 
-        productRouter.route("/v1/products*").handler(BodyHandler.create());
-        productRouter.get("/v1/products").handler(this::getAllProducts);
-        productRouter.get("/v1/products/:id").handler(this::getProductById);
-        productRouter.post("/v1/products").handler(this::postProduct);
-        productRouter.put("/v1/products/:id").handler(this::updateProductById);
-        productRouter.delete("/v1/products/:id").handler(this::deleteProductById);
+        vertx.eventBus().<String>consumer(PRODUCT_INVALIDATION, message -> productCache.evict(message.body()));
+
+        // read as it arrives, so registered ahead of the body handler
+        productRouter.post("/v1/products/_import").handler(timed("/v1/products/_import", this::importProducts));
+        // bodies over the limit are answered with 413 before any handler sees them
+        productRouter.route("/v1/products*").handler(BodyHandler.create().setBodyLimit(bodyLimit));
+        productRouter.get("/v1/products").handler(timed("/v1/products", this::getAllProducts));
+        productRouter.get("/v1/products/_export").handler(timed("/v1/products/_export", this::exportProducts));
+        productRouter.get("/v1/products/:id").handler(timed("/v1/products/:id", this::getProductById));
+        productRouter.get("/v1/products/by-number/:number")
+                .handler(timed("/v1/products/by-number/:number", this::getProductByNumber));
+        productRouter.post("/v1/products").handler(timed("/v1/products", this::postProduct));
+        productRouter.post("/v1/products/_bulk").handler(timed("/v1/products/_bulk", this::postProducts));
+        productRouter.put("/v1/products/:id").handler(timed("/v1/products/:id", this::updateProductById));
+        productRouter.delete("/v1/products/:id").handler(timed("/v1/products/:id", this::deleteProductById));
 
         return productRouter;
     }
 
     private void getAllProducts(RoutingContext routingContext) {
+        Integer limit;
+        String after;
+        List<String> fields;
+        try {
+            limit = pageSize(routingContext.request().getParam("limit"));
+            after = Optional.ofNullable(routingContext.request().getParam("cursor"))
+                    .map(ProductRouteHandler::decodeCursor)
+                    .orElse(null);
+            fields = fields(routingContext);
+        } catch (IllegalArgumentException exc) {
+            badRequest(routingContext, exc.getMessage());
+            return;
+        }
+
+        if (Boolean.parseBoolean(routingContext.request().getParam("stream"))) {
+            // a stream always covers the whole collection; a page size or cursor would be silently dropped
+            if (routingContext.request().getParam("limit") != null
+                    || routingContext.request().getParam("cursor") != null) {
+                badRequest(routingContext, "stream cannot be combined with limit or cursor");
+                return;
+            }
+            streamAllProducts(routingContext, fields);
+            return;
+        }
 
-        vertx.eventBus().request(MONGO_SERVICE, new JsonObject().put("cmd", GET_ALL_PRODUCTS), reply -> {
+        ProductCommand command = ProductCommand.builder().cmd(GET_ALL_PRODUCTS).after(after).limit(limit)
+                .fields(fields).build();
+        request(command, reply -> {
             if (reply.succeeded()) {
-                JsonObject resultJson = new JsonObject(reply.result().body().toString());
+                ProductReply result = reply.result().body();
 
-                Optional.ofNullable(resultJson.getString("error"))
+                Optional.ofNullable(result.getError())
                         .ifPresentOrElse(error ->
-                                        routingContext.response().setStatusCode(500)
-                                                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                                                .end(Json.encodePrettily(new JsonObject().put("error", error)))
+                                        endWithFailedReply(routingContext, result)
                                 , () -> {
-                                    JsonArray resultList = resultJson.getJsonArray("products");
-                                    LOGGER.info("getAllProducts returning " + resultList.size() + " results");
-                                    List<Product> products = resultList.stream()
-                                            .map(obj -> new JsonObject(obj.toString()))
-                                            .map(obj -> obj.mapTo(Product.class))
-                                            .collect(Collectors.toList());
-                                    routingContext.response().setStatusCode(200)
-                                            .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                                            .end(Json.encodePrettily(new JsonObject().put("products", new JsonArray(products))));
+                                    List<Product> products = result.getProducts();
+                                    LOGGER.info("getAllProducts returning " + products.size() + " results");
+                                    String link = Optional.ofNullable(result.getNext())
+                                            .map(next -> routingContext.request().path() + "?limit=" + limit
+                                                    + "&cursor=" + encodeCursor(next)
+                                                    + (fields == null ? "" : "&fields=" + String.join(",", fields)))
+                                            .orElse(null);
+                                    Optional.ofNullable(link).ifPresent(next ->
+                                            routingContext.response().putHeader("Link", "<" + next + ">; rel=\"next\""));
+                                    endWithEntity(routingContext, ETags.of(products, link), fields,
+                                            pretty -> JsonWriter.page(products, link, pretty, fields));
                                 });
             } else {
-                routingContext.response().setStatusCode(401)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end();
+                endWithFailure(routingContext, reply.cause());
+            }
+        });
+    }
+
+    private static int pageSize(String limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            int size = Integer.parseInt(limit);
+            if (size < 1 || size > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            return size;
+        } catch (NumberFormatException exc) {
+            throw new IllegalArgumentException("limit must be a number");
+        }
+    }
+
+    /**
+     * {@code ?fields=id,number} narrows product reads to those fields, both from mongo and in the body; null when
+     * absent.
+     */
+    private static List<String> fields(RoutingContext routingContext) {
+        return Optional.ofNullable(routingContext.request().getParam("fields"))
+                .map(ProductFields::parse)
+                .orElse(null);
+    }
+
+    /**
+     * Cursor tokens are the last _id of the previous page, url-safe base64 encoded.
+     */
+    private static String encodeCursor(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException exc) {
+            throw new IllegalArgumentException("cursor is not valid");
+        }
+    }
+
+    /**
+     * Writes every product as a chunked {"products": [...]} body, pulling batches from the mongo service only as fast
+     * as the client reads them.
+     */
+    private void streamAllProducts(RoutingContext routingContext, List<String> fields) {
+        openStream(routingContext, fields).ifPresent(stream -> pipeProducts(routingContext, stream, JSON_TYPE,
+                "{\"products\":[", ",", "]}", product -> JsonWriter.product(product, false, fields)));
+    }
+
+    /**
+     * Dumps the whole collection as newline delimited JSON, one product per line, in no particular order. Products
+     * are pulled from the mongo service's cursor one batch at a time and only as fast as the client reads them, so
+     * memory stays bounded by a batch whatever the collection size. Gzipped for clients that accept it while
+     * {@code http.compression.enabled} is on. Takes {@code ?fields=} like the other reads.
+     */
+    private void exportProducts(RoutingContext routingContext) {
+        List<String> fields;
+        try {
+            fields = fields(routingContext);
+        } catch (IllegalArgumentException exc) {
+            badRequest(routingContext, exc.getMessage());
+            return;
+        }
+        openStream(routingContext, fields).ifPresent(stream -> pipeProducts(routingContext, stream, NDJSON_TYPE,
+                "", "", "", product -> JsonWriter.product(product, false, fields).appendByte((byte) '\n')));
+    }
+
+    /**
+     * A stream of every product holding a read permit until the response is done, or empty (and answered) when
+     * reads are at their limit.
+     */
+    private Optional<ProductStream> openStream(RoutingContext routingContext, List<String> fields) {
+        Optional<ConcurrencyLimiter.Permit> admitted = admission.tryAcquire(false);
+        if (!admitted.isPresent()) {
+            endWithFailure(routingContext, new RejectedException("Too many reads in flight"));
+            return Optional.empty();
+        }
+        // a stream holds its slot until it ends, but its duration says nothing about the service's latency
+        ConcurrencyLimiter.Permit permit = admitted.get();
+        ProductStream stream = new ProductStream(vertx,
+                ProductCommand.builder().cmd(STREAM_PRODUCTS).fields(fields).build(), readOptions);
+        routingContext.addBodyEndHandler(v -> permit.ignore());
+        routingContext.response().closeHandler(v -> {
+            stream.handler(null);
+            permit.ignore();
+        });
+        return Optional.of(stream);
+    }
+
+    /**
+     * Writes the products between prefix and suffix as a chunked response, pausing the stream while the
+     * response's write queue is full.
+     */
+    private void pipeProducts(RoutingContext routingContext, ProductStream stream, String contentType,
+                              String prefix, String separator, String suffix, Function<Product, Buffer> encoder) {
+        HttpServerResponse response = routingContext.response();
+        AtomicBoolean first = new AtomicBoolean(true);
+
+        stream.exceptionHandler(error -> {
+            LOGGER.error("Streaming products failed " + error.getMessage(), error);
+            if (response.headWritten()) {
+                response.close();
+            } else {
+                endWithError(routingContext, 500, error.getMessage());
+            }
+        });
+        stream.endHandler(v -> {
+            if (first.get()) {
+                response.putHeader(HttpHeaders.CONTENT_TYPE, contentType).end(prefix + suffix);
+            } else {
+                response.end(suffix);
+            }
+        });
+        stream.handler(product -> {
+            if (first.getAndSet(false)) {
+                response.setChunked(true)
+                        .setStatusCode(200)
+                        .putHeader(HttpHeaders.CONTENT_TYPE, contentType);
+                if (!prefix.isEmpty()) {
+                    response.write(prefix);
+                }
+            } else if (!separator.isEmpty()) {
+                response.write(separator);
+            }
+            response.write(encoder.apply(product));
+            if (response.writeQueueFull()) {
+                stream.pause();
+                response.drainHandler(drained -> stream.resume());
             }
         });
     }
 
     private void getProductById(RoutingContext routingContext) {
         String id = routingContext.request().getParam("id");
-        JsonObject message = new JsonObject().put("cmd", GET_PRODUCT).put("id", id);
-        vertx.eventBus().request(MONGO_SERVICE, message, reply -> {
+        List<String> fields;
+        try {
+            fields = fields(routingContext);
+        } catch (IllegalArgumentException exc) {
+            badRequest(routingContext, exc.getMessage());
+            return;
+        }
+        Optional<Product> cached = productCache.get(id);
+        if (cached.isPresent()) {
+            endWithProduct(routingContext, ProductFields.project(cached.get(), fields), fields);
+            return;
+        }
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id(id).fields(fields).build();
+        String key = fields == null ? id : id + "?" + String.join(",", fields);
+        productReads.execute(key, done -> {
+            // taken when the shared read starts, so a write answered while it is in flight keeps it out of the cache
+            long generation = productCache.generation();
+            request(command, reply -> {
+                ProductReply result = reply.succeeded() ? reply.result().body() : null;
+                // partial products are never cached, so hits can serve any selection; stale copies are not kept
+                if (result != null && !result.failed() && !result.isStale() && fields == null) {
+                    productCache.put(result.getProduct(), generation);
+                }
+                done.handle(reply);
+            });
+        }, reply -> {
             if (reply.succeeded()) {
-                JsonObject msgJson = new JsonObject(reply.result().body().toString());
-                Optional.ofNullable(msgJson.getString("error"))
+                ProductReply result = reply.result().body();
+                Optional.ofNullable(result.getError())
                         .ifPresentOrElse(error ->
-                                        routingContext.response().setStatusCode(500)
-                                                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                                                .end(Json.encodePrettily(new JsonObject().put("error", error))),
+                                        endWithFailedReply(routingContext, result),
                                 () -> {
-                                    Product product = msgJson.mapTo(Product.class);
                                     LOGGER.info("getProductById returning results");
-                                    routingContext.response().setStatusCode(200)
-                                            .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                                            .end(Json.encodePrettily(JsonObject.mapFrom(product)));
+                                    if (result.isStale()) {
+                                        // a copy from before mongo became unreachable
+                                        routingContext.response().putHeader("Warning", "110 - \"Response is Stale\"");
+                                    }
+                                    endWithProduct(routingContext, result.getProduct(), fields);
                                 });
             } else {
-                routingContext.response().setStatusCode(401)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end();
+                endWithFailure(routingContext, reply.cause());
             }
         });
     }
 
-    private void postProduct(RoutingContext routingContext) {
-        JsonObject value = routingContext.getBodyAsJson();
-        JsonObject message = new JsonObject().put("cmd", CREATE_PRODUCT).put("value", value);
-        vertx.eventBus().request(MONGO_SERVICE, message, reply -> {
+    /**
+     * Reads through the unique number index. Answers are not cached here, as the cache is keyed by id; full products
+     * are put in it for later reads by id.
+     */
+    private void getProductByNumber(RoutingContext routingContext) {
+        String number = routingContext.request().getParam("number");
+        List<String> fields;
+        try {
+            fields = fields(routingContext);
+        } catch (IllegalArgumentException exc) {
+            badRequest(routingContext, exc.getMessage());
+            return;
+        }
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT_BY_NUMBER).number(number).fields(fields).build();
+        long generation = productCache.generation();
+        request(command, reply -> {
             if (reply.succeeded()) {
-                JsonObject productJson = new JsonObject(reply.result().body().toString());
-                Product product = productJson.mapTo(Product.class);
-                routingContext.response().setStatusCode(201)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end(Json.encodePrettily(JsonObject.mapFrom(product)));
+                ProductReply result = reply.result().body();
+                Optional.ofNullable(result.getError())
+                        .ifPresentOrElse(error ->
+                                        endWithFailedReply(routingContext, result),
+                                () -> {
+                                    LOGGER.info("getProductByNumber returning results");
+                                    if (fields == null) {
+                                        productCache.put(result.getProduct(), generation);
+                                    }
+                                    endWithProduct(routingContext, result.getProduct(), fields);
+                                });
             } else {
-                routingContext.response().setStatusCode(500)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end(Json.encodePrettily(new JsonObject().put("error", reply.cause().getMessage())));
+                endWithFailure(routingContext, reply.cause());
             }
         });
     }
 
-    private void updateProductById(RoutingContext routingContext) {
-        String id = routingContext.request().getParam("id");
-        JsonObject value = routingContext.getBodyAsJson();
-        JsonObject message = new JsonObject().put("cmd", UPDATE_PRODUCT).put("id", id).put("value", value);
-        vertx.eventBus().request(MONGO_SERVICE, message, reply -> {
-            if (reply.succeeded()) {
-                JsonObject productJson = new JsonObject(reply.result().body().toString());
-                Product product = productJson.mapTo(Product.class);
-                routingContext.response().setStatusCode(200)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end(Json.encodePrettily(JsonObject.mapFrom(product)));
+    private void endWithProduct(RoutingContext routingContext, Product product, List<String> fields) {
+        endWithEntity(routingContext, ETags.of(product), fields, pretty -> JsonWriter.product(product, pretty, fields));
+    }
+
+    /**
+     * Answers 304 with no body when If-None-Match already holds the etag; the body is only built otherwise.
+     * A field selection gets its own tag, as its body leaves out fields that would otherwise be written as null.
+     */
+    private void endWithEntity(RoutingContext routingContext, String etag, List<String> fields,
+                               Function<Boolean, Buffer> body) {
+        boolean pretty = pretty(routingContext);
+        String tag = fields == null ? etag : ETags.variant(etag, "fields." + String.join(".", fields));
+        tag = pretty ? ETags.variant(tag, "pretty") : tag;
+        HttpServerResponse response = routingContext.response().putHeader(HttpHeaders.ETAG, tag);
+        if (ETags.matches(routingContext.request().getHeader(HttpHeaders.IF_NONE_MATCH), tag)) {
+            response.setStatusCode(304).end();
+        } else {
+            response.setStatusCode(200)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
+                    .end(body.apply(pretty));
+        }
+    }
+
+    /**
+     * Bodies are compact; {@code ?pretty=true} pretty prints them for debugging.
+     */
+    private static boolean pretty(RoutingContext routingContext) {
+        return Boolean.parseBoolean(routingContext.request().getParam("pretty"));
+    }
+
+    private void postProduct(RoutingContext routingContext) {
+        readProduct(routingContext).ifPresent(value -> {
+            ProductCommand command = ProductCommand.builder().cmd(CREATE_PRODUCT).value(value).build();
+            request(command, reply ->
+                    endWithReply(routingContext, 201, reply));
+        });
+    }
+
+    private void postProducts(RoutingContext routingContext) {
+        readProducts(routingContext).ifPresent(values -> {
+            ProductCommand command = ProductCommand.builder().cmd(BULK_CREATE_PRODUCTS).values(values).build();
+            request(command, reply ->
+                    endWithReply(routingContext, 200, reply));
+        });
+    }
+
+    /**
+     * Streams newline delimited JSON products into the database with {@link ProductImport}, answering with a chunked
+     * {@code application/x-ndjson} report: failed lines and progress while the upload is read, then the totals as
+     * {@code {"done": {...}}}, or {@code {"error", "lines"}} when the import stopped after the given line.
+     */
+    private void importProducts(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+        HttpServerResponse response = routingContext.response();
+        ProductImport productImport = new ProductImport(request, importBatchSize, importMaxLineBytes,
+                importMaxReportedFailures, this::request);
+        response.closeHandler(v -> productImport.cancel());
+        productImport.reportHandler(report -> {
+            if (!response.headWritten()) {
+                response.setChunked(true)
+                        .setStatusCode(200)
+                        .putHeader(HttpHeaders.CONTENT_TYPE, NDJSON_TYPE);
+            }
+            // progress is skipped while the client is not reading; failed lines are capped, so always written
+            if (!report.containsKey("progress") || !response.writeQueueFull()) {
+                response.write(ndjson(report));
+            }
+        });
+        productImport.start(done -> {
+            if (done.succeeded()) {
+                LOGGER.info("importProducts processed " + done.result().getLong("lines") + " lines");
+                response.putHeader(HttpHeaders.CONTENT_TYPE, NDJSON_TYPE)
+                        .end(ndjson(new JsonObject().put("done", done.result())));
+                return;
+            }
+            LOGGER.error("Import stopped after line " + productImport.getLines() + ": " + done.cause().getMessage());
+            if (!response.headWritten()) {
+                if (done.cause() instanceof IllegalArgumentException) {
+                    badRequest(routingContext, done.cause().getMessage());
+                } else {
+                    endWithFailure(routingContext, done.cause());
+                }
             } else {
-                routingContext.response().setStatusCode(500)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end(Json.encodePrettily(new JsonObject().put("error", reply.cause().getMessage())));
+                response.end(ndjson(new JsonObject()
+                        .put("error", done.cause().getMessage())
+                        .put("lines", productImport.getLines())));
+            }
+            if (!request.isEnded()) {
+                // the rest of the upload is not wanted
+                response.close();
             }
         });
     }
 
+    private static Buffer ndjson(JsonObject value) {
+        return JsonWriter.value(value, false).appendByte((byte) '\n');
+    }
+
+    private void updateProductById(RoutingContext routingContext) {
+        String id = routingContext.request().getParam("id");
+        readProduct(routingContext).ifPresent(value -> {
+            ProductCommand command = ProductCommand.builder().cmd(UPDATE_PRODUCT).id(id).value(value).build();
+            request(command, reply -> {
+                invalidate(id);
+                endWithReply(routingContext, 200, reply);
+            });
+        });
+    }
+
     private void deleteProductById(RoutingContext routingContext) {
         String id = routingContext.request().getParam("id");
-        JsonObject message = new JsonObject().put("cmd", DELETE_PRODUCT).put("id", id);
-        vertx.eventBus().request(MONGO_SERVICE, message, reply -> {
+        ProductCommand command = ProductCommand.builder().cmd(DELETE_PRODUCT).id(id).build();
+        request(command, reply -> {
+            invalidate(id);
+            endWithReply(routingContext, 200, reply);
+        });
+    }
+
+    /**
+     * Sends a command to the mongo service if its budget (reads or writes) allows, with that budget's timeout;
+     * otherwise fails at once with a {@link RejectedException}.
+     */
+    private void request(ProductCommand command, Handler<AsyncResult<Message<ProductReply>>> handler) {
+        boolean write = !READ_COMMANDS.contains(command.getCmd());
+        Optional<ConcurrencyLimiter.Permit> admitted = admission.tryAcquire(write);
+        if (!admitted.isPresent()) {
+            handler.handle(Future.failedFuture(
+                    new RejectedException("Too many " + (write ? "writes" : "reads") + " in flight")));
+            return;
+        }
+        if (write && mongoAvailability.isUnavailable()) {
+            admitted.get().ignore();
+            handler.handle(Future.failedFuture(new RejectedException("The backend database is unavailable")));
+            return;
+        }
+        ConcurrencyLimiter.Permit permit = admitted.get();
+        PENDING_REQUESTS.incrementAndGet();
+        PreferLocal.<ProductReply>request(vertx.eventBus(), MONGO_SERVICE, command, write ? writeOptions : readOptions, reply -> {
+            PENDING_REQUESTS.decrementAndGet();
             if (reply.succeeded()) {
-                JsonObject productJson = new JsonObject(reply.result().body().toString());
-                routingContext.response().setStatusCode(200)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end(Json.encodePrettily(productJson));
+                permit.success();
+            } else if (isTimeout(reply.cause())) {
+                permit.dropped();
             } else {
-                routingContext.response().setStatusCode(500)
-                        .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
-                        .end(Json.encodePrettily(new JsonObject().put("error", reply.cause().getMessage())));
+                permit.ignore();
             }
+            handler.handle(reply);
         });
     }
 
+    private static boolean isTimeout(Throwable cause) {
+        return cause instanceof ReplyException && ((ReplyException) cause).failureType() == ReplyFailure.TIMEOUT;
+    }
+
+    /**
+     * Records the request's latency, tagged by route pattern and status, once the response has been written.
+     */
+    private static Handler<RoutingContext> timed(String route, Handler<RoutingContext> handler) {
+        return routingContext -> {
+            long start = System.nanoTime();
+            routingContext.addBodyEndHandler(v -> Meters.timer("http.route.requests",
+                    "method", routingContext.request().method().name(),
+                    "route", "/api" + route,
+                    "status", Integer.toString(routingContext.response().getStatusCode()))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+            handler.handle(routingContext);
+        };
+    }
+
+    /**
+     * Drops the id from this node's cache right away and tells every other api node to do the same.
+     * Done whatever the outcome, since a failed or timed out write may still have reached the database.
+     */
+    private void invalidate(String id) {
+        productCache.evict(id);
+        vertx.eventBus().publish(PRODUCT_INVALIDATION, id);
+    }
+
+    private Optional<Product> readProduct(RoutingContext routingContext) {
+        try {
+            return Optional.of(routingContext.getBodyAsJson().mapTo(Product.class));
+        } catch (Exception exc) {
+            badRequest(routingContext, "Malformed product");
+            return Optional.empty();
+        }
+    }
+
+    private Optional<List<Product>> readProducts(RoutingContext routingContext) {
+        JsonArray body;
+        try {
+            body = routingContext.getBodyAsJsonArray();
+        } catch (Exception exc) {
+            body = null;
+        }
+        if (body == null) {
+            badRequest(routingContext, "Expected an array of products");
+            return Optional.empty();
+        }
+        List<Product> products = new ArrayList<>(body.size());
+        for (int i = 0; i < body.size(); i++) {
+            try {
+                products.add(body.getJsonObject(i).mapTo(Product.class));
+            } catch (Exception exc) {
+                badRequest(routingContext, "Malformed product at index " + i);
+                return Optional.empty();
+            }
+        }
+        return Optional.of(products);
+    }
+
+    private void badRequest(RoutingContext routingContext, String error) {
+        endWithError(routingContext, 400, error);
+    }
+
+    private void endWithError(RoutingContext routingContext, int status, String error) {
+        routingContext.response().setStatusCode(status)
+                .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
+                .end(JsonWriter.value(new JsonObject().put("error", error), pretty(routingContext)));
+    }
+
+    /**
+     * Turned away or no mongo service around: 503 with Retry-After so clients back off. Timed out: 504.
+     */
+    private void endWithFailure(RoutingContext routingContext, Throwable cause) {
+        boolean unavailable = cause instanceof RejectedException || (cause instanceof ReplyException
+                && ((ReplyException) cause).failureType() == ReplyFailure.NO_HANDLERS);
+        if (unavailable) {
+            routingContext.response().putHeader(HttpHeaders.RETRY_AFTER,
+                    Long.toString(admission.getRetryAfterSeconds()));
+            endWithError(routingContext, 503, cause.getMessage());
+        } else {
+            endWithError(routingContext, isTimeout(cause) ? 504 : 500, cause.getMessage());
+        }
+    }
+
+    /**
+     * An error reply is a 500, or a 503 with Retry-After when the mongo service refused the command because the
+     * database is unreachable.
+     */
+    private void endWithFailedReply(RoutingContext routingContext, ProductReply result) {
+        if (result.isUnavailable()) {
+            routingContext.response().putHeader(HttpHeaders.RETRY_AFTER, Long.toString(admission.getRetryAfterSeconds()));
+            endWithError(routingContext, 503, result.getError());
+        } else if (result.isNotFound()) {
+            endWithError(routingContext, 404, result.getError());
+        } else {
+            endWithError(routingContext, 500, result.getError());
+        }
+    }
+
+    private void endWithReply(RoutingContext routingContext, int successStatus, AsyncResult<Message<ProductReply>> reply) {
+        if (reply.succeeded() && reply.result().body().isUnavailable()) {
+            endWithFailedReply(routingContext, reply.result().body());
+        } else if (reply.succeeded()) {
+            ProductReply result = reply.result().body();
+            boolean pretty = pretty(routingContext);
+            routingContext.response().setStatusCode(result.failed() ? 500 : successStatus)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, JSON_TYPE)
+                    .end(result.getProduct() != null
+                            ? JsonWriter.product(result.getProduct(), pretty)
+                            : JsonWriter.value(result.toJson(), pretty));
+        } else {
+            endWithFailure(routingContext, reply.cause());
+        }
+    }
+
 }
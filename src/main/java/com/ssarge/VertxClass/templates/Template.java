@@ -0,0 +1,104 @@
+package com.ssarge.VertxClass.templates;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page compiled once into literal chunks and {@code {token}} slots. Rendering encodes each token's value once,
+ * then appends the chunks and values into a single buffer of the exact size, in one pass over the segments.
+ * <p>
+ * A token is a brace wrapped name of letters, digits, '_', '-' or '.'; any other brace is literal text. Tokens with
+ * no value are rendered as written, the same as the old string replacement left them.
+ */
+public final class Template {
+
+    private final List<Object> segments;
+    private final List<String> names;
+    private final int[] occurrences;
+    private final int literalLength;
+
+    private Template(List<Object> segments, List<String> names, int[] occurrences, int literalLength) {
+        this.segments = segments;
+        this.names = names;
+        this.occurrences = occurrences;
+        this.literalLength = literalLength;
+    }
+
+    public static Template compile(String source) {
+        List<Object> segments = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> occurrences = new ArrayList<>();
+        int literalLength = 0;
+        int literalStart = 0;
+        int index = source.indexOf('{');
+        while (index >= 0) {
+            int end = tokenEnd(source, index);
+            if (end < 0) {
+                index = source.indexOf('{', index + 1);
+                continue;
+            }
+            if (index > literalStart) {
+                byte[] literal = source.substring(literalStart, index).getBytes(StandardCharsets.UTF_8);
+                segments.add(literal);
+                literalLength += literal.length;
+            }
+            String name = source.substring(index + 1, end);
+            int slot = names.indexOf(name);
+            if (slot < 0) {
+                slot = names.size();
+                names.add(name);
+                occurrences.add(0);
+            }
+            occurrences.set(slot, occurrences.get(slot) + 1);
+            segments.add(slot);
+            literalStart = end + 1;
+            index = source.indexOf('{', literalStart);
+        }
+        if (literalStart < source.length()) {
+            byte[] literal = source.substring(literalStart).getBytes(StandardCharsets.UTF_8);
+            segments.add(literal);
+            literalLength += literal.length;
+        }
+        return new Template(Collections.unmodifiableList(segments), Collections.unmodifiableList(names),
+                occurrences.stream().mapToInt(Integer::intValue).toArray(), literalLength);
+    }
+
+    public Buffer render(Map<String, String> values) {
+        byte[][] encoded = new byte[names.size()][];
+        int length = literalLength;
+        for (int slot = 0; slot < encoded.length; slot++) {
+            String name = names.get(slot);
+            String value = values.get(name);
+            encoded[slot] = (value != null ? value : "{" + name + "}").getBytes(StandardCharsets.UTF_8);
+            length += encoded[slot].length * occurrences[slot];
+        }
+        Buffer buffer = Buffer.buffer(length);
+        for (Object segment : segments) {
+            buffer.appendBytes(segment instanceof Integer ? encoded[(Integer) segment] : (byte[]) segment);
+        }
+        return buffer;
+    }
+
+    /**
+     * Index of the closing brace of a token opened at {@code start}, or -1 when the brace does not open one.
+     */
+    private static int tokenEnd(String source, int start) {
+        int index = start + 1;
+        while (index < source.length()) {
+            char c = source.charAt(index);
+            if (c == '}') {
+                return index > start + 1 ? index : -1;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return -1;
+            }
+            index++;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,139 @@
+package com.ssarge.VertxClass.templates;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Compiled webroot pages that need token substitution. Pages are read without blocking when loaded (the directory
+ * is resolved on disk first, then on the classpath, like the static handler) and rendered from memory afterwards.
+ * <p>
+ * With {@code http.templates.reloadMs} above 0 the loaded files are polled and recompiled when their modification
+ * time changes; point {@code http.templates.dir} at the source webroot to edit pages while the server runs.
+ */
+public class Templates {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Templates.class);
+
+    private final Vertx vertx;
+    private final String directory;
+    private final long reloadMs;
+    private final Map<String, Loaded> loaded = new ConcurrentHashMap<>();
+    private long reloadTimer = -1;
+
+    public Templates(Vertx vertx, String directory, long reloadMs) {
+        this.vertx = vertx;
+        this.directory = directory;
+        this.reloadMs = reloadMs;
+    }
+
+    public static Templates fromConfig(Vertx vertx, JsonObject config) {
+        return new Templates(vertx,
+                config.getString("http.templates.dir", "webroot"),
+                config.getLong("http.templates.reloadMs", 0L));
+    }
+
+    /**
+     * Compiles the named pages; completes once all of them are ready, and starts the reload timer if configured.
+     */
+    public void load(List<String> names, Handler<AsyncResult<Void>> handler) {
+        List<Future<Void>> loads = names.stream()
+                .map(name -> {
+                    Promise<Void> loaded = Promise.promise();
+                    load(name, loaded);
+                    return loaded.future();
+                })
+                .collect(Collectors.toList());
+        // CompositeFuture.all only takes a raw list in vert.x 3.8
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        List<Future> all = (List<Future>) (List<?>) loads;
+        CompositeFuture.all(all).setHandler(result -> {
+            if (reloadMs > 0 && reloadTimer < 0) {
+                reloadTimer = vertx.setPeriodic(reloadMs, id -> reloadChanged());
+            }
+            handler.handle(result.mapEmpty());
+        });
+    }
+
+    /**
+     * Renders the named page with the values the request supplies; falls through to the next handler when the page
+     * has not been loaded.
+     */
+    public Handler<RoutingContext> handler(String name, Function<RoutingContext, Map<String, String>> values) {
+        return context -> {
+            Loaded page = loaded.get(name);
+            if (page == null) {
+                context.next();
+                return;
+            }
+            context.response().putHeader(HttpHeaders.CONTENT_TYPE, "text/html")
+                    .end(page.template.render(values.apply(context)));
+        };
+    }
+
+    public void close() {
+        if (reloadTimer >= 0) {
+            vertx.cancelTimer(reloadTimer);
+            reloadTimer = -1;
+        }
+    }
+
+    private void load(String name, Handler<AsyncResult<Void>> handler) {
+        String path = directory + "/" + name;
+        vertx.fileSystem().props(path, props -> {
+            if (props.failed()) {
+                handler.handle(Future.failedFuture(props.cause()));
+                return;
+            }
+            long modified = props.result().lastModifiedTime();
+            vertx.fileSystem().readFile(path, read -> {
+                if (read.succeeded()) {
+                    Template template = Template.compile(read.result().toString(StandardCharsets.UTF_8));
+                    loaded.put(name, new Loaded(template, modified));
+                    handler.handle(Future.succeededFuture());
+                } else {
+                    handler.handle(Future.failedFuture(read.cause()));
+                }
+            });
+        });
+    }
+
+    private void reloadChanged() {
+        loaded.forEach((name, page) -> vertx.fileSystem().props(directory + "/" + name, props -> {
+            if (props.succeeded() && props.result().lastModifiedTime() != page.modified) {
+                load(name, result -> {
+                    if (result.succeeded()) {
+                        LOGGER.info("Reloaded template " + name);
+                    } else {
+                        LOGGER.error("Failed to reload template " + name, result.cause());
+                    }
+                });
+            }
+        }));
+    }
+
+    private static final class Loaded {
+        private final Template template;
+        private final long modified;
+
+        private Loaded(Template template, long modified) {
+            this.template = template;
+            this.modified = modified;
+        }
+    }
+}
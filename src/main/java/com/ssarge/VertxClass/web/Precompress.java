@@ -0,0 +1,52 @@
+package com.ssarge.VertxClass.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build step (bound to prepare-package) writing a {@code .gz} copy next to every compressible webroot file, for
+ * {@link StaticFiles} to send to clients that accept gzip. Copies that would not be smaller are skipped.
+ */
+public final class Precompress {
+
+    private static final List<String> EXTENSIONS = Arrays.asList(".html", ".css", ".js", ".json", ".svg", ".txt", ".xml");
+
+    private Precompress(){}
+
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : "target/classes/webroot");
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(file -> EXTENSIONS.stream().anyMatch(file.toString()::endsWith))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            compress(file);
+        }
+    }
+
+    private static void compress(Path file) throws IOException {
+        Path gzip = Paths.get(file + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip)) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            Files.copy(file, out);
+        }
+        if (Files.size(gzip) >= Files.size(file)) {
+            Files.delete(gzip);
+        } else {
+            gzip.toFile().setLastModified(file.toFile().lastModified());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.ssarge.VertxClass.web;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.file.FileProps;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.impl.MimeMapping;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.StaticHandler;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Serving of the webroot. By default files are read on every request with no cache headers, as during development.
+ * <p>
+ * With {@code http.static.cache.enabled} the static handler keeps file properties in memory and answers
+ * conditional requests, and every response gets a {@code Cache-Control} max-age picked by the longest matching path
+ * prefix in {@code http.static.maxAge} (falling back to {@code http.static.maxAgeSeconds}). With
+ * {@code http.static.gzip.enabled}, clients accepting gzip are sent the {@code .gz} sibling built at package time
+ * (see {@link Precompress}) when there is one.
+ * <p>
+ * Files go out with sendfile only when the server does not compress responses itself
+ * ({@code http.compression.enabled} false), since netty has to read a file through the compressor otherwise.
+ */
+public class StaticFiles {
+
+    private static final String ROOT = StaticHandler.DEFAULT_WEB_ROOT;
+
+    private final Vertx vertx;
+    private final boolean cacheEnabled;
+    private final boolean gzipEnabled;
+    private final long cacheEntryTimeout;
+    private final int maxCacheSize;
+    private final long defaultMaxAge;
+    private final TreeMap<String, Long> maxAgeByPrefix = new TreeMap<>();
+    private final Map<String, GzipEntry> gzipEntries = new HashMap<>();
+
+    public StaticFiles(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        this.cacheEnabled = config.getBoolean("http.static.cache.enabled", false);
+        this.gzipEnabled = config.getBoolean("http.static.gzip.enabled", false);
+        this.cacheEntryTimeout = config.getLong("http.static.cache.entryTimeoutMs", StaticHandler.DEFAULT_CACHE_ENTRY_TIMEOUT);
+        this.maxCacheSize = config.getInteger("http.static.cache.maxSize", StaticHandler.DEFAULT_MAX_CACHE_SIZE);
+        this.defaultMaxAge = config.getLong("http.static.maxAgeSeconds", StaticHandler.DEFAULT_MAX_AGE_SECONDS);
+        config.getJsonObject("http.static.maxAge", new JsonObject())
+                .forEach(entry -> maxAgeByPrefix.put(entry.getKey(), ((Number) entry.getValue()).longValue()));
+    }
+
+    /**
+     * Adds the static routes; call after every other route so that only unmatched requests reach the webroot.
+     */
+    public void mount(Router router) {
+        if (cacheEnabled) {
+            router.route().handler(this::cacheControl);
+        }
+        if (gzipEnabled) {
+            router.route().handler(this::precompressed);
+        }
+        router.route().handler(StaticHandler.create(ROOT)
+                .setCachingEnabled(cacheEnabled)
+                .setCacheEntryTimeout(cacheEntryTimeout)
+                .setMaxCacheSize(maxCacheSize)
+                .setMaxAgeSeconds(defaultMaxAge));
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    long maxAge(String path) {
+        Map.Entry<String, Long> entry = maxAgeByPrefix.floorEntry(path);
+        while (entry != null && !path.startsWith(entry.getKey())) {
+            entry = maxAgeByPrefix.lowerEntry(entry.getKey());
+        }
+        return entry != null ? entry.getValue() : defaultMaxAge;
+    }
+
+    private void cacheControl(RoutingContext context) {
+        HttpServerResponse response = context.response();
+        String cacheControl = Optional.of(maxAge(context.normalisedPath()))
+                .filter(maxAge -> maxAge > 0)
+                .map(maxAge -> "public, max-age=" + maxAge)
+                .orElse("no-cache");
+        response.headersEndHandler(v -> {
+            if (response.getStatusCode() == 200 || response.getStatusCode() == 304) {
+                response.putHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            }
+        });
+        context.next();
+    }
+
+    private void precompressed(RoutingContext context) {
+        HttpServerRequest request = context.request();
+        if ((request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) || !acceptsGzip(request)) {
+            context.next();
+            return;
+        }
+        String path = context.normalisedPath();
+        String file = ROOT + (path.endsWith("/") ? path + "index.html" : path);
+        gzipProps(file + ".gz", props -> {
+            if (props == null) {
+                context.next();
+                return;
+            }
+            HttpServerResponse response = context.response()
+                    .putHeader(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .putHeader("Vary", HttpHeaders.ACCEPT_ENCODING)
+                    .putHeader(HttpHeaders.CONTENT_TYPE, contentType(file))
+                    .putHeader(HttpHeaders.LAST_MODIFIED, httpDate(props.lastModifiedTime()));
+            if (notModified(request, props.lastModifiedTime())) {
+                response.setStatusCode(304).end();
+            } else if (request.method() == HttpMethod.HEAD) {
+                response.putHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(props.size())).end();
+            } else {
+                response.sendFile(file + ".gz");
+            }
+        });
+    }
+
+    /**
+     * Properties of the precompressed file, or null when there is none; looked up once per cache entry timeout.
+     */
+    private void gzipProps(String file, Handler<FileProps> handler) {
+        long now = System.currentTimeMillis();
+        GzipEntry entry = gzipEntries.get(file);
+        if (entry != null && now - entry.created < cacheEntryTimeout) {
+            handler.handle(entry.props);
+            return;
+        }
+        vertx.fileSystem().props(file, result -> {
+            FileProps props = result.succeeded() && result.result().isRegularFile() ? result.result() : null;
+            if (gzipEntries.size() >= maxCacheSize) {
+                gzipEntries.clear();
+            }
+            gzipEntries.put(file, new GzipEntry(props, now));
+            handler.handle(props);
+        });
+    }
+
+    private static boolean acceptsGzip(HttpServerRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    private static boolean notModified(HttpServerRequest request, long lastModified) {
+        String ifModifiedSince = request.getHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return lastModified / 1000 <= since / 1000;
+        } catch (DateTimeParseException exc) {
+            return false;
+        }
+    }
+
+    private static String contentType(String file) {
+        String contentType = Optional.ofNullable(MimeMapping.getMimeTypeForFilename(file)).orElse("application/octet-stream");
+        return contentType.startsWith("text") ? contentType + ";charset=UTF-8" : contentType;
+    }
+
+    private static String httpDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
+
+    private static final class GzipEntry {
+        private final FileProps props;
+        private final long created;
+
+        private GzipEntry(FileProps props, long created) {
+            this.props = props;
+            this.created = created;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.ssarge.VertxClass;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
 import org.junit.Test;
 
 /**
@@ -17,4 +21,40 @@ public class ApiVerticleTest
     {
         assertTrue( true );
     }
+
+    @Test
+    public void serverOptions_maps_http2_settings()
+    {
+        // GIVEN
+        JsonObject config = new JsonObject()
+                .put("http2.maxConcurrentStreams", 500)
+                .put("http2.initialWindowSize", 1048576)
+                .put("http2.headerTableSize", 8192)
+                .put("http.ssl.enabled", true)
+                .put("http.ssl.keyPath", "key.pem")
+                .put("http.ssl.certPath", "cert.pem");
+
+        // WHEN
+        HttpServerOptions options = ApiVerticle.serverOptions(config);
+
+        // THEN
+        assertEquals(500, options.getInitialSettings().getMaxConcurrentStreams());
+        assertEquals(1048576, options.getInitialSettings().getInitialWindowSize());
+        assertEquals(8192, options.getInitialSettings().getHeaderTableSize());
+        assertTrue(options.isSsl());
+        assertTrue(options.isUseAlpn());
+    }
+
+    @Test
+    public void serverOptions_defaults_to_cleartext()
+    {
+        // WHEN
+        HttpServerOptions options = ApiVerticle.serverOptions(new JsonObject());
+
+        // THEN
+        assertFalse(options.isSsl());
+        assertTrue(options.isTcpNoDelay());
+        assertEquals(HttpServerOptions.DEFAULT_INITIAL_SETTINGS_MAX_CONCURRENT_STREAMS,
+                options.getInitialSettings().getMaxConcurrentStreams());
+    }
 }
@@ -0,0 +1,59 @@
+package com.ssarge.VertxClass.admission;
+
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void tryAcquire_rejects_beyond_limit_until_a_permit_is_released() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new FixedLimit(2));
+
+        Optional<ConcurrencyLimiter.Permit> first = limiter.tryAcquire();
+        assertTrue(first.isPresent());
+        assertTrue(limiter.tryAcquire().isPresent());
+        assertFalse(limiter.tryAcquire().isPresent());
+
+        first.get().success();
+        first.get().ignore();
+
+        assertEquals(1, limiter.getInflight());
+        assertTrue(limiter.tryAcquire().isPresent());
+    }
+
+    @Test
+    public void aimd_grows_while_busy_and_backs_off_on_drops() {
+        AimdLimit limit = new AimdLimit(20, 10, 100);
+
+        limit.onSample(1_000, 10, false);
+        assertEquals(21, limit.getLimit());
+
+        limit.onSample(1_000, 2, false);
+        assertEquals(21, limit.getLimit());
+
+        limit.onSample(1_000, 21, true);
+        assertEquals(18, limit.getLimit());
+    }
+
+    @Test
+    public void gradient_shrinks_when_latency_rises() {
+        GradientLimit limit = new GradientLimit(100, 10, 1000);
+        long fast = TimeUnit.MILLISECONDS.toNanos(2);
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(fast, 100, false);
+        }
+        int settled = limit.getLimit();
+        assertTrue(settled > 100);
+
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(fast * 10, settled, false);
+        }
+        assertTrue(limit.getLimit() < settled);
+    }
+}
@@ -0,0 +1,37 @@
+package com.ssarge.VertxClass.admission;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MongoAvailabilityTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private static JsonObject state(String node, String state) {
+        return new JsonObject().put("name", "mongo").put("node", node).put("state", state);
+    }
+
+    @Test
+    public void isUnavailable_only_when_every_recent_node_is_open() {
+        MongoAvailability availability = new MongoAvailability(1_000, now::get);
+        assertFalse(availability.isUnavailable());
+
+        availability.onState(state("a", "OPEN"));
+        availability.onState(state("b", "CLOSED"));
+        assertFalse(availability.isUnavailable());
+
+        now.set(500);
+        availability.onState(state("a", "OPEN"));
+        now.set(1_200);
+        // b has not reported for too long
+        assertTrue(availability.isUnavailable());
+
+        availability.onState(state("a", "HALF_OPEN"));
+        assertFalse(availability.isUnavailable());
+    }
+}
@@ -0,0 +1,123 @@
+package com.ssarge.VertxClass.cache;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProductCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private static Product product(String id) {
+        return Product.builder().id(id).number("n" + id).build();
+    }
+
+    @Test
+    public void get_counts_hits_and_misses() {
+        ProductCache cache = new ProductCache("test", 10, 1_000, now::get);
+        cache.put(product("1"));
+
+        assertTrue(cache.get("1").isPresent());
+        assertFalse(cache.get("2").isPresent());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void get_expired_entry_is_a_miss() {
+        ProductCache cache = new ProductCache("test", 10, 1_000, now::get);
+        cache.put(product("1"));
+
+        now.set(1_000);
+
+        assertFalse(cache.get("1").isPresent());
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void put_beyond_max_size_drops_least_recently_used() {
+        ProductCache cache = new ProductCache("test", 2, 1_000, now::get);
+        cache.put(product("1"));
+        cache.put(product("2"));
+        cache.get("1");
+        cache.put(product("3"));
+
+        assertTrue(cache.get("1").isPresent());
+        assertFalse(cache.get("2").isPresent());
+        assertTrue(cache.get("3").isPresent());
+    }
+
+    @Test
+    public void evict_removes_entry() {
+        ProductCache cache = new ProductCache("test", 10, 1_000, now::get);
+        cache.put(product("1"));
+        cache.evict("1");
+
+        assertFalse(cache.get("1").isPresent());
+    }
+
+    @Test
+    public void put_of_read_started_before_evict_is_skipped() {
+        // GIVEN a read started, after which its product was evicted (updated elsewhere)
+        ProductCache cache = new ProductCache("test", 10, 1_000, now::get);
+        long generation = cache.generation();
+        cache.evict("1");
+
+        // WHEN the read's result is put, along with one for a product left alone
+        cache.put(product("1"), generation);
+        cache.put(product("2"), generation);
+
+        // THEN only the untouched product is cached, and a read started after the evict caches again
+        assertFalse(cache.get("1").isPresent());
+        assertTrue(cache.get("2").isPresent());
+        cache.put(product("1"), cache.generation());
+        assertTrue(cache.get("1").isPresent());
+    }
+
+    @Test
+    public void put_of_read_older_than_forgotten_invalidations_is_skipped() {
+        // GIVEN a read started, after which more products were evicted than the cache keeps track of
+        ProductCache cache = new ProductCache("test", 2, 1_000, now::get);
+        long generation = cache.generation();
+        cache.evict("1");
+        cache.evict("2");
+        cache.evict("3");
+
+        // WHEN the read's result is put
+        cache.put(product("4"), generation);
+
+        // THEN it is not cached, as the evicts it may have missed are no longer known
+        assertFalse(cache.get("4").isPresent());
+    }
+
+    @Test
+    public void counts_in_meters_tagged_with_the_cache_name() {
+        // GIVEN a registry picking up the cache meters
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            ProductCache cache = new ProductCache("metered", 10, 1_000, now::get);
+            cache.put(product("1"));
+
+            // WHEN the entry is read, a missing one is read, and the entry is evicted
+            cache.get("1");
+            cache.get("2");
+            cache.evict("1");
+
+            // THEN each outcome is counted once
+            assertEquals(1, registry.get("cache.gets").tags("cache", "metered", "result", "hit").counter().count(), 0);
+            assertEquals(1, registry.get("cache.gets").tags("cache", "metered", "result", "miss").counter().count(), 0);
+            assertEquals(1, registry.get("cache.evictions").tags("cache", "metered").counter().count(), 0);
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.ssarge.VertxClass.cache;
+
+import io.vertx.core.Handler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SingleFlightTest {
+
+    @Test
+    public void execute_concurrent_calls_share_one_operation() {
+        // GIVEN an operation for key "1" is still running
+        // WHEN two more callers ask for key "1"
+        // THEN the operation is only started once
+        // AND all three callers get its result
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger started = new AtomicInteger();
+        List<Handler<String>> running = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            singleFlight.execute("1", done -> {
+                started.incrementAndGet();
+                running.add(done);
+            }, results::add);
+        }
+        running.get(0).handle("result");
+
+        assertEquals(1, started.get());
+        assertEquals(3, results.size());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void execute_after_completion_starts_again() {
+        // GIVEN an operation for key "1" has completed
+        // WHEN key "1" is asked for again
+        // THEN a new operation is started
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger started = new AtomicInteger();
+
+        singleFlight.execute("1", done -> {
+            started.incrementAndGet();
+            done.handle("first");
+        }, result -> { });
+        singleFlight.execute("1", done -> {
+            started.incrementAndGet();
+            done.handle("second");
+        }, result -> assertEquals("second", result));
+
+        assertEquals(2, started.get());
+    }
+}
@@ -0,0 +1,291 @@
+package com.ssarge.VertxClass.loadtest;
+
+import com.ssarge.VertxClass.ApiVerticle;
+import com.ssarge.VertxClass.MongoDBVerticle;
+import com.ssarge.VertxClass.resources.InMemoryMongoClient;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs ApiVerticle and MongoDBVerticle (on the in-memory client) in one JVM and drives the REST endpoints at a fixed
+ * arrival rate, then prints latency percentiles and throughput:
+ * <pre>
+ *   mvn -Ploadtest test-compile exec:exec -Dload.args="-Dload.rate=2000 -Dload.latencyMs=2"
+ * </pre>
+ * Requests are sent on schedule whether or not earlier ones have returned (an open model), and latency is measured
+ * from when each request was due rather than when it went out, so queueing behind a slow response is counted instead
+ * of hidden (coordinated omission).
+ * <p>
+ * Settings, as system properties: load.rate [500] requests per second, load.durationSeconds [30],
+ * load.warmupSeconds [5], load.products [1000] seeded, load.connections [32], load.mix [get=70,page=20,post=10],
+ * load.port [18080], load.instances [cores] per verticle, load.latencyMs [0], load.latencyJitterMs [0] and
+ * load.errorRate [0] for the in-memory client.
+ */
+public class LoadGenerator {
+
+    private static final String PASSPHRASE = "loadtest";
+    private static final String PRODUCTS = "/api/v1/products";
+    private static final int SEED_CHUNK = 500;
+
+    private final Vertx vertx;
+    private final HttpClient client;
+    private final int rate;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int[] mix;
+    private final List<String> ids = new ArrayList<>();
+    private final Histogram histogram = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final Map<String, Integer> statuses = new TreeMap<>();
+
+    private long sent;
+    private long completed;
+    private long measureStart;
+    private long measureEnd;
+
+    private LoadGenerator(Vertx vertx, int port) {
+        this.vertx = vertx;
+        this.client = vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultHost("localhost")
+                .setDefaultPort(port)
+                .setMaxPoolSize(Integer.getInteger("load.connections", 32))
+                .setKeepAlive(true));
+        this.rate = Integer.getInteger("load.rate", 500);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.durationSeconds", 30L));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.warmupSeconds", 5L));
+        this.mix = mix(System.getProperty("load.mix", "get=70,page=20,post=10"));
+    }
+
+    public static void main(String[] args) {
+        int port = Integer.getInteger("load.port", 18080);
+        JsonObject config = new JsonObject()
+                .put("http.port", port)
+                .put("server.passphrase", PASSPHRASE)
+                .put("metrics.enabled", false)
+                .put("mongodb.databasename", "loadtest")
+                .put("eventbus.local", true)
+                .put("mongodb.clientClass", InMemoryMongoClient.class.getName())
+                .put("mongodb.inMemory.latencyMs", Long.getLong("load.latencyMs", 0L))
+                .put("mongodb.inMemory.latencyJitterMs", Long.getLong("load.latencyJitterMs", 0L))
+                .put("mongodb.inMemory.errorRate", Double.parseDouble(System.getProperty("load.errorRate", "0")));
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(config)
+                .setInstances(Integer.getInteger("load.instances", Runtime.getRuntime().availableProcessors()));
+
+        Vertx vertx = Vertx.vertx();
+        Promise<String> mongo = Promise.promise();
+        vertx.deployVerticle(MongoDBVerticle.class.getName(), options, mongo);
+        mongo.future().compose(id -> {
+            Promise<String> api = Promise.promise();
+            vertx.deployVerticle(ApiVerticle.class.getName(), options, api);
+            return api.future();
+        }).setHandler(deployed -> {
+            if (deployed.failed()) {
+                deployed.cause().printStackTrace();
+                vertx.close();
+                return;
+            }
+            // run on one context so the counters need no locking
+            vertx.runOnContext(v -> new LoadGenerator(vertx, port).run());
+        });
+    }
+
+    private void run() {
+        int products = Integer.getInteger("load.products", 1000);
+        System.out.printf("Seeding %d products%n", products);
+        seed(products, seeded -> {
+            if (seeded.failed()) {
+                finish(seeded.cause());
+                return;
+            }
+            collectIds(null, collected -> {
+                if (collected.failed() || ids.isEmpty()) {
+                    finish(collected.failed() ? collected.cause() : new IllegalStateException("No products seeded"));
+                    return;
+                }
+                System.out.printf("Driving %d requests/s for %ds after %ds warmup%n", rate,
+                        TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+                drive();
+            });
+        });
+    }
+
+    private void seed(int remaining, Handler<AsyncResult<Void>> handler) {
+        if (remaining <= 0) {
+            handler.handle(Future.succeededFuture());
+            return;
+        }
+        int chunk = Math.min(remaining, SEED_CHUNK);
+        JsonArray body = new JsonArray();
+        for (int i = 0; i < chunk; i++) {
+            body.add(randomProduct());
+        }
+        request(HttpMethod.POST, PRODUCTS + "/_bulk", body.toBuffer(), response -> {
+            if (response.failed() || response.result().getInteger("status") != 200) {
+                handler.handle(Future.failedFuture("Seeding failed: " + (response.failed()
+                        ? response.cause().getMessage() : response.result().encode())));
+            } else {
+                seed(remaining - chunk, handler);
+            }
+        });
+    }
+
+    private void collectIds(String cursor, Handler<AsyncResult<Void>> handler) {
+        String uri = PRODUCTS + "?limit=1000" + (cursor == null ? "" : "&cursor=" + cursor);
+        request(HttpMethod.GET, uri, null, response -> {
+            if (response.failed()) {
+                handler.handle(Future.failedFuture(response.cause()));
+                return;
+            }
+            JsonObject page = new JsonObject(response.result().getString("body"));
+            page.getJsonArray("products").forEach(product -> ids.add(((JsonObject) product).getString("id")));
+            String next = page.getString("next");
+            if (next == null) {
+                handler.handle(Future.succeededFuture());
+            } else {
+                collectIds(next, handler);
+            }
+        });
+    }
+
+    /**
+     * Checks every millisecond how many requests are due since the start and sends them, each stamped with the time
+     * it was due.
+     */
+    private void drive() {
+        long start = System.nanoTime();
+        long end = start + warmupNanos + durationNanos;
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+        measureStart = start + warmupNanos;
+        measureEnd = end;
+        vertx.setPeriodic(1, timer -> {
+            long now = System.nanoTime();
+            long due = (long) ((Math.min(now, end) - start) / intervalNanos);
+            while (sent < due) {
+                send(start + (long) (sent * intervalNanos));
+                sent++;
+            }
+            if (now >= end) {
+                vertx.cancelTimer(timer);
+                // give the stragglers a moment before reporting
+                vertx.setTimer(TimeUnit.SECONDS.toMillis(5), v -> finish(null));
+            }
+        });
+    }
+
+    private void send(long intended) {
+        int pick = ThreadLocalRandom.current().nextInt(mix[0] + mix[1] + mix[2]);
+        String kind;
+        Handler<AsyncResult<JsonObject>> done = response -> record(intended, response);
+        if (pick < mix[0]) {
+            kind = "get";
+            request(HttpMethod.GET, PRODUCTS + "/" + ids.get(ThreadLocalRandom.current().nextInt(ids.size())),
+                    null, done);
+        } else if (pick < mix[0] + mix[1]) {
+            kind = "page";
+            request(HttpMethod.GET, PRODUCTS + "?limit=20", null, done);
+        } else {
+            kind = "post";
+            request(HttpMethod.POST, PRODUCTS, randomProduct().toBuffer(), done);
+        }
+        statuses.merge("sent " + kind, 1, Integer::sum);
+    }
+
+    private void record(long intended, AsyncResult<JsonObject> response) {
+        long now = System.nanoTime();
+        completed++;
+        String outcome = response.succeeded() ? "status " + response.result().getInteger("status") : "connection error";
+        statuses.merge(outcome, 1, Integer::sum);
+        if (intended >= measureStart && intended < measureEnd) {
+            histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(now - intended),
+                    histogram.getHighestTrackableValue()));
+        }
+    }
+
+    private void request(HttpMethod method, String uri, Buffer body, Handler<AsyncResult<JsonObject>> handler) {
+        HttpClientRequest request = client.request(method, uri, response -> response.bodyHandler(buffer ->
+                handler.handle(Future.succeededFuture(new JsonObject()
+                        .put("status", response.statusCode())
+                        .put("body", buffer.toString())))));
+        request.exceptionHandler(exc -> handler.handle(Future.failedFuture(exc)));
+        request.putHeader("AuthToken", PASSPHRASE);
+        if (body != null) {
+            request.putHeader("Content-Type", "application/json").end(body);
+        } else {
+            request.end();
+        }
+    }
+
+    private void finish(Throwable failure) {
+        if (failure != null) {
+            System.out.println("Load test failed: " + failure.getMessage());
+        } else {
+            double seconds = (measureEnd - measureStart) / (double) TimeUnit.SECONDS.toNanos(1);
+            System.out.printf("%nSent %d, completed %d, outstanding %d%n", sent, completed, sent - completed);
+            System.out.printf("Throughput: %.1f requests/s over %.0fs%n", histogram.getTotalCount() / seconds, seconds);
+            System.out.printf("Latency (ms): p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                    percentile(50), percentile(90), percentile(99), percentile(99.9),
+                    histogram.getMaxValue() / 1000.0);
+            statuses.forEach((key, count) -> System.out.printf("  %-18s %d%n", key, count));
+        }
+        client.close();
+        vertx.close();
+    }
+
+    private double percentile(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static JsonObject randomProduct() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new JsonObject()
+                .put("number", Long.toString(random.nextLong(1_000_000_000L)))
+                .put("description", "Load test product " + random.nextInt(1000));
+    }
+
+    /**
+     * Parses "get=70,page=20,post=10" into weights for by-id gets, page gets and posts.
+     */
+    private static int[] mix(String spec) {
+        int[] weights = new int[3];
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            switch (pair[0].trim()) {
+                case "get":
+                    weights[0] = weight;
+                    break;
+                case "page":
+                    weights[1] = weight;
+                    break;
+                case "post":
+                    weights[2] = weight;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown request kind in load.mix: " + pair[0]);
+            }
+        }
+        if (weights[0] + weights[1] + weights[2] <= 0) {
+            throw new IllegalArgumentException("load.mix needs at least one positive weight");
+        }
+        return weights;
+    }
+}
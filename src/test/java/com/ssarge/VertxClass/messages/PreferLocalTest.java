@@ -0,0 +1,73 @@
+package com.ssarge.VertxClass.messages;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(VertxUnitRunner.class)
+public class PreferLocalTest {
+
+    private static final String ADDRESS = "com.ssarge.test";
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void request_local_handler_answers(TestContext context) {
+        // GIVEN a local consumer
+        // WHEN a local only request is sent
+        // THEN the local consumer answers it
+
+        Async async = context.async();
+        EventBus eventBus = rule.vertx().eventBus();
+        eventBus.<String>localConsumer(ADDRESS, message -> message.reply("local " + message.body()));
+
+        PreferLocal.<String>request(eventBus, ADDRESS, "ping", new DeliveryOptions().setLocalOnly(true), reply -> {
+            context.assertEquals("local ping", reply.result().body());
+            async.complete();
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void request_no_local_handler_falls_back_to_cluster(TestContext context) {
+        // GIVEN no local consumer for the address
+        // WHEN a local only request is sent
+        // THEN it is sent again with cluster delivery, keeping the other options
+
+        EventBus eventBus = mock(EventBus.class);
+        ArgumentCaptor<DeliveryOptions> options = ArgumentCaptor.forClass(DeliveryOptions.class);
+        doAnswer(invocation -> {
+            DeliveryOptions sent = invocation.getArgument(2);
+            Handler<AsyncResult<Message<Object>>> handler = invocation.getArgument(3);
+            handler.handle(sent.isLocalOnly()
+                    ? Future.failedFuture(new ReplyException(ReplyFailure.NO_HANDLERS, "none"))
+                    : Future.succeededFuture());
+            return eventBus;
+        }).when(eventBus).request(eq(ADDRESS), any(), options.capture(), any(Handler.class));
+
+        PreferLocal.request(eventBus, ADDRESS, "ping", new DeliveryOptions().setLocalOnly(true).setSendTimeout(1234),
+                context.asyncAssertSuccess(reply -> {
+                    context.assertEquals(2, options.getAllValues().size());
+                    context.assertFalse(options.getValue().isLocalOnly());
+                    context.assertEquals(1234L, options.getValue().getSendTimeout());
+                }));
+    }
+}
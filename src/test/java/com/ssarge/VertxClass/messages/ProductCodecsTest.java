@@ -0,0 +1,104 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static com.ssarge.VertxClass.AppConstants.*;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(VertxUnitRunner.class)
+public class ProductCodecsTest {
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void commandCodec_wire_round_trip() {
+        // GIVEN a command with a value containing non-ascii text
+        // WHEN it is encoded and decoded behind some existing bytes
+        // THEN the decoded command equals the original
+        ProductCommandCodec codec = new ProductCommandCodec();
+        ProductCommand command = ProductCommand.builder()
+                .cmd(UPDATE_PRODUCT)
+                .id("1")
+                .value(Product.builder().number("123").description("Crème brûlée").build())
+                .values(Arrays.asList(Product.builder().number("1").build(), Product.builder().number("2").build()))
+                .after("0")
+                .limit(30)
+                .fields(Arrays.asList("number", "description"))
+                .number("123")
+                .build();
+
+        Buffer buffer = Buffer.buffer().appendString("junk");
+        codec.encodeToWire(buffer, command);
+
+        assertEquals(command, codec.decodeFromWire(4, buffer));
+    }
+
+    @Test
+    public void commandCodec_reads_commands_without_fields() {
+        // GIVEN a command encoded without the trailing fields and number, followed by other bytes
+        // WHEN it is decoded
+        // THEN it has no field selection or number
+        ProductCommandCodec codec = new ProductCommandCodec();
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+        Buffer encoded = Buffer.buffer();
+        codec.encodeToWire(encoded, command);
+        // drop the trailing fields and number lengths
+        Buffer buffer = Buffer.buffer()
+                .appendInt(encoded.getInt(0) - 8)
+                .appendBuffer(encoded.getBuffer(4, encoded.length() - 8))
+                .appendString("junk");
+
+        assertEquals(command, codec.decodeFromWire(0, buffer));
+    }
+
+    @Test
+    public void replyCodec_wire_round_trip() {
+        // GIVEN replies of each shape
+        // WHEN they are encoded and decoded
+        // THEN the decoded replies equal the originals
+        ProductReplyCodec codec = new ProductReplyCodec();
+        Product product = Product.builder().id("1").number("123").description("Some description").build();
+
+        for (ProductReply reply : Arrays.asList(
+                ProductReply.of(product),
+                ProductReply.of(Arrays.asList(product, Product.builder().id("2").build()), "2"),
+                ProductReply.ofResults(Arrays.asList(ItemResult.ok(0, "1"), ItemResult.failed(1, "duplicate key"))),
+                ProductReply.removed("1"),
+                ProductReply.error("bad", "worse"))) {
+            Buffer buffer = Buffer.buffer();
+            codec.encodeToWire(buffer, reply);
+            assertEquals(reply, codec.decodeFromWire(0, buffer));
+        }
+    }
+
+    @Test
+    public void register_local_delivery_passes_reference(TestContext context) {
+        // GIVEN the codecs are registered twice on the same event bus
+        // WHEN a command is sent to a local consumer
+        // THEN the consumer receives the same instance
+        Vertx vertx = rule.vertx();
+        ProductCodecs.register(vertx.eventBus());
+        ProductCodecs.register(vertx.eventBus());
+
+        Async async = context.async();
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+
+        vertx.eventBus().<ProductCommand>consumer("codec.test", message -> {
+            context.assertTrue(message.body() == command);
+            async.complete();
+        });
+        vertx.eventBus().send("codec.test", command);
+    }
+}
@@ -0,0 +1,108 @@
+package com.ssarge.VertxClass.messages;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.ssarge.VertxClass.AppConstants.*;
+
+@RunWith(VertxUnitRunner.class)
+public class ProductStreamTest {
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    private EventBus eventBus;
+    private final List<String> acks = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        eventBus = rule.vertx().eventBus();
+        ProductCodecs.register(eventBus);
+    }
+
+    private static Product product(String id) {
+        return Product.builder().id(id).build();
+    }
+
+    private static ProductReply batch(String status, Product... products) {
+        return ProductReply.builder().products(Arrays.asList(products)).status(status).build();
+    }
+
+    private static List<String> ids(List<Product> products) {
+        return products.stream().map(Product::getId).collect(Collectors.toList());
+    }
+
+    private ProductStream stream() {
+        return new ProductStream(rule.vertx(), ProductCommand.builder().cmd(STREAM_PRODUCTS).build());
+    }
+
+    @Test
+    public void cancel_while_batch_in_flight_cancels_that_batch(TestContext context) {
+        // GIVEN a mongo service answering the first batch only after a delay
+        // WHEN the stream is cancelled before that batch arrives
+        // THEN the late batch is answered with stream_cancel, so the cursor is closed at once
+
+        Async async = context.async();
+        eventBus.<ProductCommand>consumer(MONGO_SERVICE, request -> rule.vertx().setTimer(50, timer ->
+                request.<ProductCommand>replyAndRequest(batch(ProductReply.STREAM_MORE, product("1")), ack -> {
+                    context.assertTrue(ack.succeeded());
+                    context.assertEquals(STREAM_CANCEL, ack.result().body().getCmd());
+                    async.complete();
+                })));
+
+        ProductStream stream = stream();
+        stream.handler(product -> context.fail("cancelled stream emitted " + product));
+        stream.handler(null);
+    }
+
+    @Test
+    public void pause_and_fetch_request_next_batch_only_once_consumed(TestContext context) {
+        // GIVEN a mongo service with two batches, and a stream started paused
+        // WHEN products are fetched one at a time
+        // THEN each fetch hands over one product, and the next batch is asked for only once the first is consumed
+
+        Async async = context.async();
+        eventBus.<ProductCommand>consumer(MONGO_SERVICE, request -> request.<ProductCommand>replyAndRequest(
+                batch(ProductReply.STREAM_MORE, product("1"), product("2")), ack -> {
+                    acks.add(ack.result().body().getCmd());
+                    ack.result().reply(batch(ProductReply.STREAM_DONE, product("3")));
+                }));
+
+        List<Product> received = new ArrayList<>();
+        ProductStream stream = stream();
+        stream.pause();
+        stream.endHandler(v -> {
+            context.assertEquals(Arrays.asList("1", "2", "3"), ids(received));
+            context.assertEquals(Collections.singletonList(STREAM_NEXT), acks);
+            async.complete();
+        });
+        stream.handler(received::add);
+
+        rule.vertx().setTimer(50, first -> {
+            context.assertTrue(received.isEmpty());
+            stream.fetch(1);
+            context.assertEquals(Collections.singletonList("1"), ids(received));
+            stream.fetch(1);
+            context.assertEquals(Arrays.asList("1", "2"), ids(received));
+            rule.vertx().setTimer(50, second -> {
+                context.assertTrue(acks.isEmpty());
+                stream.fetch(1);
+            });
+        });
+    }
+}
@@ -0,0 +1,886 @@
+package com.ssarge.VertxClass.resources;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.mongo.AggregateOptions;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
+import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.IndexOptions;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.MongoClientBulkWriteResult;
+import io.vertx.ext.mongo.MongoClientDeleteResult;
+import io.vertx.ext.mongo.MongoClientUpdateResult;
+import io.vertx.ext.mongo.UpdateOptions;
+import io.vertx.ext.mongo.WriteOption;
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A MongoClient keeping its collections in memory, for running the service with no database (load tests, local
+ * experiments). Selected in MongoDBVerticle with {@code mongodb.clientClass} set to this class's name, with the test
+ * classes on the classpath.
+ * <p>
+ * Every call completes asynchronously on the caller's context after {@code mongodb.inMemory.latencyMs} plus up to
+ * {@code mongodb.inMemory.latencyJitterMs} of random delay, and fails with a {@link MongoException} at
+ * {@code mongodb.inMemory.errorRate} (0 to 1). All clients of one Vert.x instance and database name share the data.
+ * <p>
+ * Supported: inserts and saves, replaces, removes, bulk writes of inserts, replaces and deletes, finds with
+ * sort/skip/limit/projection (as streams too), count, collections and indexes, with unique (and partial) indexes
+ * enforced. Queries match top level fields by equality or with $eq, $ne, $gt, $gte, $lt, $lte, $in and
+ * {@code $type: "string"}; {@code $oid} values
+ * compare as their hex string, which is how ids are stored. Anything else throws UnsupportedOperationException.
+ */
+public class InMemoryMongoClient implements MongoClient {
+
+    private static final String STORES = "com.ssarge.inMemoryMongo";
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final Vertx vertx;
+    private final Store store;
+    private final long latencyMs;
+    private final long latencyJitterMs;
+    private final double errorRate;
+
+    public InMemoryMongoClient(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        LocalMap<String, Store> stores = vertx.sharedData().getLocalMap(STORES);
+        Store created = new Store();
+        this.store = Optional.ofNullable(stores.putIfAbsent(config.getString("mongodb.databasename", "default"), created))
+                .orElse(created);
+        this.latencyMs = config.getLong("mongodb.inMemory.latencyMs", 0L);
+        this.latencyJitterMs = config.getLong("mongodb.inMemory.latencyJitterMs", 0L);
+        this.errorRate = config.getDouble("mongodb.inMemory.errorRate", 0.0);
+    }
+
+    @Override
+    public MongoClient save(String collection, JsonObject document, Handler<AsyncResult<String>> resultHandler) {
+        return saveWithOptions(collection, document, null, resultHandler);
+    }
+
+    @Override
+    public MongoClient saveWithOptions(String collection, JsonObject document, WriteOption writeOption,
+                                       Handler<AsyncResult<String>> resultHandler) {
+        complete(() -> {
+            boolean generated = !document.containsKey("_id");
+            String id = store.collection(collection).put(document, true);
+            return generated ? id : null;
+        }, resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient insert(String collection, JsonObject document, Handler<AsyncResult<String>> resultHandler) {
+        return insertWithOptions(collection, document, null, resultHandler);
+    }
+
+    @Override
+    public MongoClient insertWithOptions(String collection, JsonObject document, WriteOption writeOption,
+                                         Handler<AsyncResult<String>> resultHandler) {
+        complete(() -> {
+            boolean generated = !document.containsKey("_id");
+            String id = store.collection(collection).put(document, false);
+            return generated ? id : null;
+        }, resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient replaceDocuments(String collection, JsonObject query, JsonObject replace,
+                                        Handler<AsyncResult<MongoClientUpdateResult>> resultHandler) {
+        return replaceDocumentsWithOptions(collection, query, replace, new UpdateOptions(), resultHandler);
+    }
+
+    @Override
+    public MongoClient replaceDocumentsWithOptions(String collection, JsonObject query, JsonObject replace,
+                                                   UpdateOptions options,
+                                                   Handler<AsyncResult<MongoClientUpdateResult>> resultHandler) {
+        complete(() -> store.collection(collection).replaceOne(query, replace, options.isUpsert()), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient replace(String collection, JsonObject query, JsonObject replace,
+                               Handler<AsyncResult<Void>> resultHandler) {
+        return replaceWithOptions(collection, query, replace, new UpdateOptions(), resultHandler);
+    }
+
+    @Override
+    public MongoClient replaceWithOptions(String collection, JsonObject query, JsonObject replace,
+                                          UpdateOptions options, Handler<AsyncResult<Void>> resultHandler) {
+        return replaceDocumentsWithOptions(collection, query, replace, options, mapEmpty(resultHandler));
+    }
+
+    @Override
+    public MongoClient bulkWrite(String collection, List<BulkOperation> operations,
+                                 Handler<AsyncResult<MongoClientBulkWriteResult>> resultHandler) {
+        return bulkWriteWithOptions(collection, operations, new BulkWriteOptions(), resultHandler);
+    }
+
+    @Override
+    public MongoClient bulkWriteWithOptions(String collection, List<BulkOperation> operations,
+                                            BulkWriteOptions bulkWriteOptions,
+                                            Handler<AsyncResult<MongoClientBulkWriteResult>> resultHandler) {
+        complete(() -> store.collection(collection).bulkWrite(operations, bulkWriteOptions.isOrdered()), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient find(String collection, JsonObject query, Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+        return findWithOptions(collection, query, new FindOptions(), resultHandler);
+    }
+
+    @Override
+    public MongoClient findWithOptions(String collection, JsonObject query, FindOptions findOptions,
+                                       Handler<AsyncResult<List<JsonObject>>> resultHandler) {
+        complete(() -> store.collection(collection).find(query, findOptions), resultHandler);
+        return this;
+    }
+
+    @Override
+    public ReadStream<JsonObject> findBatch(String collection, JsonObject query) {
+        return findBatchWithOptions(collection, query, new FindOptions());
+    }
+
+    @Override
+    public ReadStream<JsonObject> findBatchWithOptions(String collection, JsonObject query, FindOptions findOptions) {
+        return new BatchStream(() -> store.collection(collection).find(query, findOptions),
+                Math.max(findOptions.getBatchSize(), 1));
+    }
+
+    @Override
+    public MongoClient findOne(String collection, JsonObject query, JsonObject fields,
+                               Handler<AsyncResult<JsonObject>> resultHandler) {
+        complete(() -> store.collection(collection).find(query, new FindOptions().setFields(fields).setLimit(1))
+                .stream().findFirst().orElse(null), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient count(String collection, JsonObject query, Handler<AsyncResult<Long>> resultHandler) {
+        complete(() -> (long) store.collection(collection).find(query, new FindOptions()).size(), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient removeDocuments(String collection, JsonObject query,
+                                       Handler<AsyncResult<MongoClientDeleteResult>> resultHandler) {
+        return removeDocumentsWithOptions(collection, query, null, resultHandler);
+    }
+
+    @Override
+    public MongoClient removeDocumentsWithOptions(String collection, JsonObject query, WriteOption writeOption,
+                                                  Handler<AsyncResult<MongoClientDeleteResult>> resultHandler) {
+        complete(() -> new MongoClientDeleteResult(store.collection(collection).remove(query, false)), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient remove(String collection, JsonObject query, Handler<AsyncResult<Void>> resultHandler) {
+        return removeDocuments(collection, query, mapEmpty(resultHandler));
+    }
+
+    @Override
+    public MongoClient removeWithOptions(String collection, JsonObject query, WriteOption writeOption,
+                                         Handler<AsyncResult<Void>> resultHandler) {
+        return removeDocumentsWithOptions(collection, query, writeOption, mapEmpty(resultHandler));
+    }
+
+    @Override
+    public MongoClient removeDocument(String collection, JsonObject query,
+                                      Handler<AsyncResult<MongoClientDeleteResult>> resultHandler) {
+        return removeDocumentWithOptions(collection, query, null, resultHandler);
+    }
+
+    @Override
+    public MongoClient removeDocumentWithOptions(String collection, JsonObject query, WriteOption writeOption,
+                                                 Handler<AsyncResult<MongoClientDeleteResult>> resultHandler) {
+        complete(() -> new MongoClientDeleteResult(store.collection(collection).remove(query, true)), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient removeOne(String collection, JsonObject query, Handler<AsyncResult<Void>> resultHandler) {
+        return removeDocument(collection, query, mapEmpty(resultHandler));
+    }
+
+    @Override
+    public MongoClient removeOneWithOptions(String collection, JsonObject query, WriteOption writeOption,
+                                            Handler<AsyncResult<Void>> resultHandler) {
+        return removeDocumentWithOptions(collection, query, writeOption, mapEmpty(resultHandler));
+    }
+
+    @Override
+    public MongoClient createCollection(String collectionName, Handler<AsyncResult<Void>> resultHandler) {
+        complete(() -> {
+            if (store.collections.putIfAbsent(collectionName, new Collection()) != null) {
+                throw new MongoException("collection already exists: " + collectionName);
+            }
+            return null;
+        }, resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient getCollections(Handler<AsyncResult<List<String>>> resultHandler) {
+        complete(() -> new ArrayList<>(store.collections.keySet()), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient dropCollection(String collection, Handler<AsyncResult<Void>> resultHandler) {
+        complete(() -> {
+            store.collections.remove(collection);
+            return null;
+        }, resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient createIndex(String collection, JsonObject key, Handler<AsyncResult<Void>> resultHandler) {
+        return createIndexWithOptions(collection, key, new IndexOptions(), resultHandler);
+    }
+
+    @Override
+    public MongoClient createIndexWithOptions(String collection, JsonObject key, IndexOptions options,
+                                              Handler<AsyncResult<Void>> resultHandler) {
+        complete(() -> {
+            store.collection(collection).createIndex(key, options);
+            return null;
+        }, resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient listIndexes(String collection, Handler<AsyncResult<JsonArray>> resultHandler) {
+        complete(() -> store.collection(collection).listIndexes(), resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient dropIndex(String collection, String indexName, Handler<AsyncResult<Void>> resultHandler) {
+        complete(() -> {
+            store.collection(collection).indexes.remove(indexName);
+            return null;
+        }, resultHandler);
+        return this;
+    }
+
+    @Override
+    public MongoClient update(String collection, JsonObject query, JsonObject update,
+                              Handler<AsyncResult<Void>> resultHandler) {
+        throw unsupported("update");
+    }
+
+    @Override
+    public MongoClient updateCollection(String collection, JsonObject query, JsonObject update,
+                                        Handler<AsyncResult<MongoClientUpdateResult>> resultHandler) {
+        throw unsupported("updateCollection");
+    }
+
+    @Override
+    public MongoClient updateWithOptions(String collection, JsonObject query, JsonObject update, UpdateOptions options,
+                                         Handler<AsyncResult<Void>> resultHandler) {
+        throw unsupported("updateWithOptions");
+    }
+
+    @Override
+    public MongoClient updateCollectionWithOptions(String collection, JsonObject query, JsonObject update,
+                                                   UpdateOptions options,
+                                                   Handler<AsyncResult<MongoClientUpdateResult>> resultHandler) {
+        throw unsupported("updateCollectionWithOptions");
+    }
+
+    @Override
+    public MongoClient findOneAndUpdate(String collection, JsonObject query, JsonObject update,
+                                        Handler<AsyncResult<JsonObject>> resultHandler) {
+        throw unsupported("findOneAndUpdate");
+    }
+
+    @Override
+    public MongoClient findOneAndUpdateWithOptions(String collection, JsonObject query, JsonObject update,
+                                                   FindOptions findOptions, UpdateOptions updateOptions,
+                                                   Handler<AsyncResult<JsonObject>> resultHandler) {
+        throw unsupported("findOneAndUpdateWithOptions");
+    }
+
+    @Override
+    public MongoClient findOneAndReplace(String collection, JsonObject query, JsonObject replace,
+                                         Handler<AsyncResult<JsonObject>> resultHandler) {
+        throw unsupported("findOneAndReplace");
+    }
+
+    @Override
+    public MongoClient findOneAndReplaceWithOptions(String collection, JsonObject query, JsonObject replace,
+                                                    FindOptions findOptions, UpdateOptions updateOptions,
+                                                    Handler<AsyncResult<JsonObject>> resultHandler) {
+        throw unsupported("findOneAndReplaceWithOptions");
+    }
+
+    @Override
+    public MongoClient findOneAndDelete(String collection, JsonObject query,
+                                        Handler<AsyncResult<JsonObject>> resultHandler) {
+        throw unsupported("findOneAndDelete");
+    }
+
+    @Override
+    public MongoClient findOneAndDeleteWithOptions(String collection, JsonObject query, FindOptions findOptions,
+                                                   Handler<AsyncResult<JsonObject>> resultHandler) {
+        throw unsupported("findOneAndDeleteWithOptions");
+    }
+
+    @Override
+    public MongoClient runCommand(String commandName, JsonObject command,
+                                  Handler<AsyncResult<JsonObject>> resultHandler) {
+        throw unsupported("runCommand");
+    }
+
+    @Override
+    public MongoClient distinct(String collection, String fieldName, String resultClassname,
+                                Handler<AsyncResult<JsonArray>> resultHandler) {
+        throw unsupported("distinct");
+    }
+
+    @Override
+    public MongoClient distinctWithQuery(String collection, String fieldName, String resultClassname, JsonObject query,
+                                         Handler<AsyncResult<JsonArray>> resultHandler) {
+        throw unsupported("distinctWithQuery");
+    }
+
+    @Override
+    public ReadStream<JsonObject> distinctBatch(String collection, String fieldName, String resultClassname) {
+        throw unsupported("distinctBatch");
+    }
+
+    @Override
+    public ReadStream<JsonObject> distinctBatchWithQuery(String collection, String fieldName, String resultClassname,
+                                                         JsonObject query) {
+        throw unsupported("distinctBatchWithQuery");
+    }
+
+    @Override
+    public ReadStream<JsonObject> distinctBatchWithQuery(String collection, String fieldName, String resultClassname,
+                                                         JsonObject query, int batchSize) {
+        throw unsupported("distinctBatchWithQuery");
+    }
+
+    @Override
+    public ReadStream<JsonObject> aggregate(String collection, JsonArray pipeline) {
+        throw unsupported("aggregate");
+    }
+
+    @Override
+    public ReadStream<JsonObject> aggregateWithOptions(String collection, JsonArray pipeline, AggregateOptions options) {
+        throw unsupported("aggregateWithOptions");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Runs the operation once the simulated latency has passed, or fails it at the configured error rate, and hands
+     * the outcome to the handler on the caller's context.
+     */
+    private <T> void complete(Supplier<T> operation, Handler<AsyncResult<T>> handler) {
+        Context context = vertx.getOrCreateContext();
+        Handler<Void> run = v -> {
+            AsyncResult<T> result;
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                result = Future.failedFuture(new MongoException("Injected failure"));
+            } else {
+                try {
+                    result = Future.succeededFuture(operation.get());
+                } catch (RuntimeException exc) {
+                    result = Future.failedFuture(exc);
+                }
+            }
+            if (handler != null) {
+                handler.handle(result);
+            }
+        };
+        long delay = latencyMs + (latencyJitterMs > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMs + 1) : 0);
+        if (delay > 0) {
+            vertx.setTimer(delay, id -> context.runOnContext(run));
+        } else {
+            context.runOnContext(run);
+        }
+    }
+
+    private static <T> Handler<AsyncResult<T>> mapEmpty(Handler<AsyncResult<Void>> handler) {
+        return result -> {
+            if (handler != null) {
+                handler.handle(result.mapEmpty());
+            }
+        };
+    }
+
+    private static UnsupportedOperationException unsupported(String operation) {
+        return new UnsupportedOperationException(operation + " is not supported by the in-memory client");
+    }
+
+    /**
+     * Ids and other {@code $oid} values are kept as their hex string, the form the real client returns them in.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof JsonObject && ((JsonObject) value).containsKey("$oid")) {
+            return ((JsonObject) value).getString("$oid");
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        }
+        if (left instanceof Comparable && left.getClass().equals(right.getClass())) {
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    private static boolean matches(JsonObject document, JsonObject query) {
+        if (query == null) {
+            return true;
+        }
+        for (Map.Entry<String, Object> condition : query) {
+            if (condition.getKey().startsWith("$")) {
+                throw unsupported("query operator " + condition.getKey());
+            }
+            Object actual = document.getValue(condition.getKey());
+            Object expected = condition.getValue();
+            if (expected instanceof JsonObject && !((JsonObject) expected).containsKey("$oid")) {
+                for (Map.Entry<String, Object> operator : (JsonObject) expected) {
+                    if (!matchesOperator(actual, operator.getKey(), normalize(operator.getValue()))) {
+                        return false;
+                    }
+                }
+            } else if (compare(actual, normalize(expected)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesOperator(Object actual, String operator, Object operand) {
+        switch (operator) {
+            case "$eq":
+                return compare(actual, operand) == 0;
+            case "$ne":
+                return compare(actual, operand) != 0;
+            case "$gt":
+                return actual != null && compare(actual, operand) > 0;
+            case "$gte":
+                return actual != null && compare(actual, operand) >= 0;
+            case "$lt":
+                return actual != null && compare(actual, operand) < 0;
+            case "$lte":
+                return actual != null && compare(actual, operand) <= 0;
+            case "$in":
+                return ((JsonArray) operand).stream().anyMatch(value -> compare(actual, normalize(value)) == 0);
+            case "$type":
+                if (!"string".equals(operand)) {
+                    throw unsupported("$type " + operand);
+                }
+                return actual instanceof String;
+            default:
+                throw unsupported("query operator " + operator);
+        }
+    }
+
+    /**
+     * Mongo projection: fields set to 1 are kept (plus _id unless it is set to 0), or, when only 0s are given, those
+     * fields are dropped.
+     */
+    private static JsonObject project(JsonObject document, JsonObject fields) {
+        if (fields == null || fields.isEmpty()) {
+            return document.copy();
+        }
+        boolean include = fields.stream()
+                .anyMatch(field -> !"_id".equals(field.getKey()) && isSet(field.getValue()));
+        JsonObject projected = new JsonObject();
+        if (include) {
+            if (!fields.containsKey("_id") || isSet(fields.getValue("_id"))) {
+                projected.put("_id", document.getValue("_id"));
+            }
+            fields.stream()
+                    .filter(field -> isSet(field.getValue()) && document.containsKey(field.getKey()))
+                    .forEach(field -> projected.put(field.getKey(), document.getValue(field.getKey())));
+        } else {
+            document.stream()
+                    .filter(field -> !fields.containsKey(field.getKey()))
+                    .forEach(field -> projected.put(field.getKey(), field.getValue()));
+        }
+        return projected.copy();
+    }
+
+    private static boolean isSet(Object value) {
+        return Boolean.TRUE.equals(value) || (value instanceof Number && ((Number) value).intValue() != 0);
+    }
+
+    /**
+     * The databases of one Vert.x instance, shared through a local map so every verticle instance sees the same data.
+     */
+    private static final class Store implements Shareable {
+        private final Map<String, Collection> collections = new ConcurrentHashMap<>();
+
+        private Collection collection(String name) {
+            return collections.computeIfAbsent(name, key -> new Collection());
+        }
+    }
+
+    /**
+     * Documents in _id order. Writes are serialized so unique indexes hold across event loops; reads see a
+     * consistent view of each document but not of the whole collection, like Mongo without a snapshot.
+     */
+    private static final class Collection {
+        private final ConcurrentSkipListMap<String, JsonObject> documents = new ConcurrentSkipListMap<>();
+        private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+
+        private List<JsonObject> find(JsonObject query, FindOptions options) {
+            Stream<JsonObject> matching = documents.values().stream().filter(document -> matches(document, query));
+            JsonObject sort = options.getSort();
+            if (sort != null && !sort.isEmpty()) {
+                matching = matching.sorted(comparator(sort));
+            }
+            if (options.getSkip() > 0) {
+                matching = matching.skip(options.getSkip());
+            }
+            if (options.getLimit() > 0) {
+                matching = matching.limit(options.getLimit());
+            }
+            return matching.map(document -> project(document, options.getFields())).collect(Collectors.toList());
+        }
+
+        private static Comparator<JsonObject> comparator(JsonObject sort) {
+            Comparator<JsonObject> comparator = (left, right) -> 0;
+            for (Map.Entry<String, Object> field : sort) {
+                int direction = ((Number) field.getValue()).intValue() < 0 ? -1 : 1;
+                comparator = comparator.thenComparing((left, right) ->
+                        direction * compare(left.getValue(field.getKey()), right.getValue(field.getKey())));
+            }
+            return comparator;
+        }
+
+        /**
+         * Stores a copy of the document, generating an ObjectId when it has no _id, and returns the id.
+         */
+        private synchronized String put(JsonObject document, boolean replaceExisting) {
+            JsonObject stored = document.copy();
+            String id = Optional.ofNullable(normalize(stored.getValue("_id")))
+                    .map(Object::toString)
+                    .orElseGet(() -> new ObjectId().toHexString());
+            stored.put("_id", id);
+            if (!replaceExisting && documents.containsKey(id)) {
+                throw duplicateKey("_id_", id);
+            }
+            store(stored);
+            return id;
+        }
+
+        private synchronized MongoClientUpdateResult replaceOne(JsonObject query, JsonObject replacement, boolean upsert) {
+            Optional<JsonObject> existing = documents.values().stream()
+                    .filter(document -> matches(document, query))
+                    .findFirst();
+            if (existing.isPresent()) {
+                store(replacement.copy().put("_id", existing.get().getString("_id")));
+                return new MongoClientUpdateResult(1, null, 1);
+            }
+            if (upsert) {
+                String id = put(replacement, false);
+                return new MongoClientUpdateResult(0, new JsonObject().put("_id", id), 0);
+            }
+            return new MongoClientUpdateResult(0, null, 0);
+        }
+
+        private synchronized long remove(JsonObject query, boolean first) {
+            List<String> ids = documents.values().stream()
+                    .filter(document -> matches(document, query))
+                    .limit(first ? 1 : Long.MAX_VALUE)
+                    .map(document -> document.getString("_id"))
+                    .collect(Collectors.toList());
+            ids.forEach(id -> {
+                JsonObject removed = documents.remove(id);
+                indexes.values().forEach(index -> index.remove(removed));
+            });
+            return ids.size();
+        }
+
+        /**
+         * Applies each operation in turn. Failed items are reported the way the driver does, with one
+         * {@link BulkWriteError} per index in a {@link MongoBulkWriteException}; ordered writes stop at the first.
+         */
+        private synchronized MongoClientBulkWriteResult bulkWrite(List<BulkOperation> operations, boolean ordered) {
+            int inserted = 0;
+            int matched = 0;
+            int modified = 0;
+            int deleted = 0;
+            List<BulkWriteError> errors = new ArrayList<>();
+            for (int index = 0; index < operations.size(); index++) {
+                BulkOperation operation = operations.get(index);
+                try {
+                    switch (operation.getType()) {
+                        case INSERT:
+                            put(operation.getDocument(), false);
+                            inserted++;
+                            break;
+                        case REPLACE:
+                            MongoClientUpdateResult result = replaceOne(operation.getFilter(), operation.getDocument(),
+                                    operation.isUpsert());
+                            matched += result.getDocMatched();
+                            modified += result.getDocModified();
+                            break;
+                        case DELETE:
+                            deleted += remove(operation.getFilter(), !operation.isMulti());
+                            break;
+                        default:
+                            throw unsupported("bulk " + operation.getType());
+                    }
+                } catch (MongoWriteException exc) {
+                    errors.add(new BulkWriteError(exc.getError().getCode(), exc.getError().getMessage(),
+                            new BsonDocument(), index));
+                    if (ordered) {
+                        break;
+                    }
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw new MongoBulkWriteException(
+                        BulkWriteResult.acknowledged(inserted, matched, deleted, modified, Collections.emptyList()),
+                        errors, null, new ServerAddress());
+            }
+            return new MongoClientBulkWriteResult(inserted, matched, deleted, modified, Collections.emptyList());
+        }
+
+        private synchronized void createIndex(JsonObject key, IndexOptions options) {
+            String name = Optional.ofNullable(options.getName())
+                    .orElseGet(() -> key.stream()
+                            .map(field -> field.getKey() + "_" + field.getValue())
+                            .collect(Collectors.joining("_")));
+            if (indexes.containsKey(name)) {
+                return;
+            }
+            Index index = new Index(name, key, options.isUnique(), options.getPartialFilterExpression());
+            for (JsonObject document : documents.values()) {
+                index.check(document);
+                index.add(document);
+            }
+            indexes.put(name, index);
+        }
+
+        private JsonArray listIndexes() {
+            JsonArray list = new JsonArray().add(new JsonObject().put("name", "_id_").put("key", new JsonObject().put("_id", 1)));
+            indexes.values().forEach(index -> {
+                JsonObject description = new JsonObject()
+                        .put("name", index.name)
+                        .put("key", index.key)
+                        .put("unique", index.unique);
+                Optional.ofNullable(index.partialFilter)
+                        .ifPresent(filter -> description.put("partialFilterExpression", filter));
+                list.add(description);
+            });
+            return list;
+        }
+
+        /**
+         * Stores the document (replacing the one with its id, if any) once every unique index accepts it.
+         */
+        private void store(JsonObject stored) {
+            indexes.values().forEach(index -> index.check(stored));
+            JsonObject previous = documents.put(stored.getString("_id"), stored);
+            indexes.values().forEach(index -> {
+                index.remove(previous);
+                index.add(stored);
+            });
+        }
+
+        private static MongoWriteException duplicateKey(String index, String key) {
+            return new MongoWriteException(new WriteError(DUPLICATE_KEY,
+                    "E11000 duplicate key error index: " + index + " dup key: " + key, new BsonDocument()),
+                    new ServerAddress());
+        }
+    }
+
+    private static final class Index {
+        private final String name;
+        private final JsonObject key;
+        private final boolean unique;
+        private final JsonObject partialFilter;
+        // key values to the id holding them, for unique indexes; only touched under the collection's lock
+        private final Map<List<Object>, String> entries = new HashMap<>();
+
+        private Index(String name, JsonObject key, boolean unique, JsonObject partialFilter) {
+            this.name = name;
+            this.key = key.copy();
+            this.unique = unique;
+            this.partialFilter = partialFilter == null ? null : partialFilter.copy();
+        }
+
+        /**
+         * Whether the document is in the index: every document, or those matching the partial filter.
+         */
+        private boolean covers(JsonObject document) {
+            return matches(document, partialFilter);
+        }
+
+        private List<Object> values(JsonObject document) {
+            return key.fieldNames().stream().map(document::getValue).collect(Collectors.toList());
+        }
+
+        /**
+         * Throws a duplicate key error when a unique index already holds the document's values for another id.
+         */
+        private void check(JsonObject document) {
+            if (unique && covers(document)) {
+                List<Object> values = values(document);
+                String holder = entries.get(values);
+                if (holder != null && !holder.equals(document.getString("_id"))) {
+                    throw Collection.duplicateKey(name, values.toString());
+                }
+            }
+        }
+
+        private void add(JsonObject document) {
+            if (unique && covers(document)) {
+                entries.put(values(document), document.getString("_id"));
+            }
+        }
+
+        private void remove(JsonObject document) {
+            if (unique && document != null && covers(document)) {
+                entries.remove(values(document), document.getString("_id"));
+            }
+        }
+    }
+
+    /**
+     * findBatch results: the query runs (after the simulated latency) on the first demand, then documents are
+     * emitted as the reader asks for them, yielding to the event loop after every batch.
+     */
+    private final class BatchStream implements ReadStream<JsonObject> {
+        private final Supplier<List<JsonObject>> query;
+        private final int batchSize;
+        private final Context context = vertx.getOrCreateContext();
+
+        private Iterator<JsonObject> iterator;
+        private boolean started;
+        private boolean ended;
+        private long demand = Long.MAX_VALUE;
+        private Handler<JsonObject> handler;
+        private Handler<Void> endHandler;
+        private Handler<Throwable> exceptionHandler;
+
+        private BatchStream(Supplier<List<JsonObject>> query, int batchSize) {
+            this.query = query;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+            this.handler = handler;
+            if (handler == null) {
+                // like closing the cursor
+                ended = true;
+            } else if (!started) {
+                started = true;
+                complete(query, result -> {
+                    if (result.succeeded()) {
+                        iterator = result.result().iterator();
+                        emit();
+                    } else {
+                        ended = true;
+                        Optional.ofNullable(exceptionHandler).ifPresent(h -> h.handle(result.cause()));
+                    }
+                });
+            }
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> pause() {
+            demand = 0;
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> resume() {
+            return fetch(Long.MAX_VALUE);
+        }
+
+        @Override
+        public ReadStream<JsonObject> fetch(long amount) {
+            demand = Long.MAX_VALUE - demand < amount ? Long.MAX_VALUE : demand + amount;
+            context.runOnContext(v -> emit());
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+
+        private void emit() {
+            if (iterator == null || ended) {
+                return;
+            }
+            int emitted = 0;
+            while (demand > 0 && handler != null && iterator.hasNext() && emitted < batchSize) {
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                emitted++;
+                handler.handle(iterator.next());
+                if (ended) {
+                    return;
+                }
+            }
+            if (!iterator.hasNext()) {
+                ended = true;
+                Optional.ofNullable(endHandler).ifPresent(h -> h.handle(null));
+            } else if (demand > 0 && handler != null) {
+                context.runOnContext(v -> emit());
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.ssarge.VertxClass.resources;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
+import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.IndexOptions;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@RunWith(VertxUnitRunner.class)
+public class InMemoryMongoClientTest {
+
+    private static final String COLLECTION = "products";
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    private Vertx vertx;
+
+    private InMemoryMongoClient testClass;
+
+    @Before
+    public void setUp() {
+        vertx = rule.vertx();
+        testClass = new InMemoryMongoClient(vertx, new JsonObject());
+    }
+
+    @Test
+    public void findWithOptions_pages_by_id_with_projection(TestContext context) {
+        // GIVEN five saved products
+        // WHEN the page after the second id is requested, limited to two and projected on name
+        // THEN the third and fourth products come back with only _id and name
+
+        Async async = context.async();
+        List<BulkOperation> inserts = IntStream.range(0, 5)
+                .mapToObj(i -> BulkOperation.createInsert(new JsonObject()
+                        .put("_id", "id" + i).put("name", "name" + i).put("number", i)))
+                .collect(Collectors.toList());
+
+        testClass.bulkWrite(COLLECTION, inserts, context.asyncAssertSuccess(written -> {
+            context.assertEquals(5L, written.getInsertedCount());
+            JsonObject query = new JsonObject().put("_id", new JsonObject().put("$gt", new JsonObject().put("$oid", "id1")));
+            FindOptions options = new FindOptions()
+                    .setSort(new JsonObject().put("_id", 1))
+                    .setLimit(2)
+                    .setFields(new JsonObject().put("name", 1));
+            testClass.findWithOptions(COLLECTION, query, options, context.asyncAssertSuccess(found -> {
+                context.assertEquals(Arrays.asList(
+                        new JsonObject().put("_id", "id2").put("name", "name2"),
+                        new JsonObject().put("_id", "id3").put("name", "name3")), found);
+                async.complete();
+            }));
+        }));
+    }
+
+    @Test
+    public void bulkWrite_unique_index_violation_reports_failed_items(TestContext context) {
+        // GIVEN a unique index on number
+        // WHEN an unordered bulk write inserts two products with the same number
+        // THEN it fails with a MongoBulkWriteException naming the second item
+        // AND the first one is stored
+
+        Async async = context.async();
+        testClass.createIndexWithOptions(COLLECTION, new JsonObject().put("number", 1), new IndexOptions().unique(true),
+                context.asyncAssertSuccess(v -> testClass.bulkWriteWithOptions(COLLECTION, Arrays.asList(
+                        BulkOperation.createInsert(new JsonObject().put("name", "a").put("number", 1)),
+                        BulkOperation.createInsert(new JsonObject().put("name", "b").put("number", 1))),
+                        new BulkWriteOptions(false), context.asyncAssertFailure(cause -> {
+                            context.assertTrue(cause instanceof MongoBulkWriteException);
+                            MongoBulkWriteException bulk = (MongoBulkWriteException) cause;
+                            context.assertEquals(1, bulk.getWriteErrors().size());
+                            context.assertEquals(1, bulk.getWriteErrors().get(0).getIndex());
+                            context.assertEquals(11000, bulk.getWriteErrors().get(0).getCode());
+                            testClass.count(COLLECTION, new JsonObject(), context.asyncAssertSuccess(count -> {
+                                context.assertEquals(1L, count);
+                                async.complete();
+                            }));
+                        }))));
+    }
+
+    @Test
+    public void errorRate_fails_calls(TestContext context) {
+        // GIVEN an error rate of 1
+        // WHEN a product is saved
+        // THEN the call fails with a MongoException
+
+        Async async = context.async();
+        testClass = new InMemoryMongoClient(vertx, new JsonObject()
+                .put("mongodb.databasename", "failing")
+                .put("mongodb.inMemory.errorRate", 1.0));
+
+        testClass.save(COLLECTION, new JsonObject().put("name", "a"), context.asyncAssertFailure(cause -> {
+            context.assertTrue(cause instanceof MongoException);
+            async.complete();
+        }));
+    }
+}
@@ -1,20 +1,36 @@
 package com.ssarge.VertxClass.resources;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.messages.ItemResult;
+import com.ssarge.VertxClass.messages.ProductCommand;
+import com.ssarge.VertxClass.messages.ProductReply;
+import com.ssarge.VertxClass.messages.ProductStream;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
 import io.vertx.ext.mongo.FindOptions;
 import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.MongoClientBulkWriteResult;
 import io.vertx.ext.mongo.MongoClientDeleteResult;
 import io.vertx.ext.mongo.MongoClientUpdateResult;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.RunTestOnContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.bson.BsonDocument;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -22,14 +38,22 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.ssarge.VertxClass.AppConstants.*;
 import static com.ssarge.VertxClass.resources.MongoManager.*;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -120,6 +144,42 @@ public class MongoManagerTest {
         });
     }
 
+    @Test
+    public void registerConsumer_createProduct_batched(TestContext context) {
+        // GIVEN consumer is registered with create batching enabled
+        // AND three CREATE_PRODUCT calls are made within the batch window
+        // WHEN the window closes
+        // THEN The mongo-client .bulkWriteWithOptions will be called once, and .save never
+        // AND every reply will have its own new id
+
+        Async async = context.async(3);
+
+        when(mongoClient.bulkWriteWithOptions(anyString(), anyList(), any(BulkWriteOptions.class), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<MongoClientBulkWriteResult>> asyncResultHandler = invocationOnMock.getArgument(3);
+            asyncResultHandler.handle(Future.succeededFuture(new MongoClientBulkWriteResult()));
+            return null;
+        });
+
+        testClass = new MongoManager(mongoClient, new JsonObject()
+                .put("mongodb.createBatch.enabled", true)
+                .put("mongodb.createBatch.windowMs", 20));
+        testClass.registerConsumer(vertx);
+
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            ProductCommand command = ProductCommand.builder()
+                    .cmd(CREATE_PRODUCT)
+                    .value(Product.builder().number(String.valueOf(i)).build())
+                    .build();
+            vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+                context.assertTrue(ids.add(reply.result().body().getProduct().getId()));
+                verify(mongoClient, times(1)).bulkWriteWithOptions(anyString(), anyList(), any(BulkWriteOptions.class), any());
+                verify(mongoClient, never()).save(anyString(), any(JsonObject.class), any());
+                async.countDown();
+            });
+        }
+    }
+
     @Test
     public void registerConsumer_createProduct_bad_data(TestContext context) {
         // GIVEN consumer is registered, and a CREATE_PRODUCT call is made
@@ -209,6 +269,48 @@ public class MongoManagerTest {
 
     }
 
+    @Test
+    public void registerConsumer_bulkCreateProducts_partial_failure(TestContext context) {
+        // GIVEN consumer is registered with a bulk chunk size of 2, and a BULK_CREATE_PRODUCTS call is made for 3 products
+        // AND the second item of the first chunk is rejected by the database
+        // WHEN the message comes down the pipe
+        // THEN The mongo-client .bulkWriteWithOptions will be called once per chunk
+        // AND the reply will have an id for items 0 and 2 and an error for item 1
+
+        Async async = context.async();
+
+        when(mongoClient.bulkWriteWithOptions(anyString(), anyList(), any(BulkWriteOptions.class), any())).thenAnswer(invocationOnMock -> {
+            List<BulkOperation> operations = invocationOnMock.getArgument(1);
+            Handler<AsyncResult<MongoClientBulkWriteResult>> asyncResultHandler = invocationOnMock.getArgument(3);
+            if (operations.size() == 2) {
+                asyncResultHandler.handle(Future.failedFuture(new MongoBulkWriteException(
+                        BulkWriteResult.unacknowledged(),
+                        Collections.singletonList(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)),
+                        null, new ServerAddress())));
+            } else {
+                asyncResultHandler.handle(Future.succeededFuture(new MongoClientBulkWriteResult()));
+            }
+            return null;
+        });
+
+        testClass = new MongoManager(mongoClient, new JsonObject().put("mongodb.bulk.chunkSize", 2));
+        testClass.registerConsumer(vertx);
+
+        List<Product> values = IntStream.range(0, 3)
+                .mapToObj(i -> Product.builder().number(String.valueOf(i)).build())
+                .collect(Collectors.toList());
+        ProductCommand command = ProductCommand.builder().cmd(BULK_CREATE_PRODUCTS).values(values).build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            List<ItemResult> results = reply.result().body().getResults();
+            context.assertEquals(3, results.size());
+            context.assertNotNull(results.get(0).getId());
+            context.assertEquals("duplicate key", results.get(1).getError());
+            context.assertNotNull(results.get(2).getId());
+            verify(mongoClient, times(2)).bulkWriteWithOptions(anyString(), anyList(), any(BulkWriteOptions.class), any());
+            async.complete();
+        });
+    }
+
     @Test
     public void registerConsumer_getALLProducts_success(TestContext context) {
         // GIVEN consumer is registered, and a GET_ALL_PRODUCTS call is made
@@ -278,6 +380,44 @@ public class MongoManagerTest {
         });
     }
 
+    @Test
+    public void registerConsumer_getALLProducts_next_page(TestContext context) {
+        // GIVEN consumer is registered, and a typed GET_ALL_PRODUCTS call is made with an after id and a limit of 2
+        // AND mongo has more than 2 products past that id
+        // WHEN the message comes down the pipe
+        // THEN The mongo-client .findWithOptions will be called with an _id range query, _id sort and a limit of 3
+        // AND the reply will hold 2 products and the id of the last one as next
+
+        Async async = context.async();
+
+        List<JsonObject> resultJson = Arrays.asList(
+                new JsonObject().put("_id", "2"),
+                new JsonObject().put("_id", "3"),
+                new JsonObject().put("_id", "4"));
+
+        when(mongoClient.findWithOptions(anyString(), any(JsonObject.class), any(FindOptions.class), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<List<JsonObject>>> asyncResultHandler = invocationOnMock.getArgument(3);
+            asyncResultHandler.handle(Future.succeededFuture(resultJson));
+            return null;
+        });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_ALL_PRODUCTS).after("1").limit(2).build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            context.assertTrue(reply.succeeded());
+            ProductReply result = reply.result().body();
+            context.assertEquals(2, result.getProducts().size());
+            context.assertEquals("3", result.getNext());
+
+            JsonObject expectedQuery = new JsonObject().put("_id", new JsonObject().put("$gt", "1"));
+            verify(mongoClient, times(1)).findWithOptions(eq("products"), eq(expectedQuery),
+                    argThat(options -> options.getLimit() == 3
+                            && new JsonObject().put("_id", 1).equals(options.getSort())), any());
+            async.complete();
+        });
+    }
+
     @Test
     public void registerConsumer_getALLProducts_failed_no_products(TestContext context) {
         // GIVEN consumer is registered, and a GET_ALL_PRODUCTS call is made
@@ -368,6 +508,35 @@ public class MongoManagerTest {
         });
     }
 
+    @Test
+    public void registerConsumer_streamProducts_success(TestContext context) {
+        // GIVEN consumer is registered with a stream batch size of 2
+        // AND the collection holds 5 products
+        // WHEN a ProductStream reads a STREAM_PRODUCTS command
+        // THEN The mongo-client .findBatchWithOptions will be called
+        // AND every product arrives in order, across three batches, followed by the end of the stream
+
+        Async async = context.async();
+
+        List<JsonObject> documents = IntStream.range(0, 5)
+                .mapToObj(i -> new JsonObject().put("_id", String.valueOf(i)).put("number", "n" + i))
+                .collect(Collectors.toList());
+        when(mongoClient.findBatchWithOptions(anyString(), any(JsonObject.class), any(FindOptions.class)))
+                .thenReturn(new ListReadStream(documents));
+
+        testClass = new MongoManager(mongoClient, new JsonObject().put("mongodb.stream.batchSize", 2));
+        testClass.registerConsumer(vertx);
+
+        List<String> ids = new ArrayList<>();
+        new ProductStream(vertx, ProductCommand.builder().cmd(STREAM_PRODUCTS).build())
+                .exceptionHandler(context::fail)
+                .endHandler(v -> {
+                    context.assertEquals(Arrays.asList("0", "1", "2", "3", "4"), ids);
+                    async.complete();
+                })
+                .handler(product -> ids.add(product.getId()));
+    }
+
     @Test
     public void registerConsumer_getProduct_success(TestContext context) {
         // GIVEN consumer is registered, and a GET_PRODUCT call is made
@@ -433,6 +602,252 @@ public class MongoManagerTest {
         });
     }
 
+    @Test
+    public void registerConsumer_getProduct_typed_command(TestContext context) {
+        // GIVEN consumer is registered, and a typed GET_PRODUCT command is sent
+        // WHEN the message comes down the pipe
+        // THEN The mongo-client .findOne will be called
+        // AND the message reply will be a typed reply with the product in it
+
+        Async async = context.async();
+
+        Product expected = Product.builder()
+                .id("1")
+                .number("123")
+                .description("Some id")
+                .build();
+
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(null), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+            asyncResultHandler.handle(Future.succeededFuture(new JsonObject()
+                    .put("_id", "1").put("number", "123").put("description", "Some id")));
+            return null;
+        });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            context.assertTrue(reply.succeeded());
+            context.assertEquals(ProductReply.of(expected), reply.result().body());
+            async.complete();
+        });
+    }
+
+    @Test
+    public void registerConsumer_getProduct_with_fields(TestContext context) {
+        // GIVEN consumer is registered, and a GET_PRODUCT command asking for the number only is sent
+        // WHEN the message comes down the pipe
+        // THEN The mongo-client .findOne will be called with a projection of the number
+        // AND the reply will hold the partial product
+
+        Async async = context.async();
+
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(new JsonObject().put("number", 1)), any()))
+                .thenAnswer(invocationOnMock -> {
+                    Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+                    asyncResultHandler.handle(Future.succeededFuture(new JsonObject().put("_id", "1").put("number", "123")));
+                    return null;
+                });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("1").fields(List.of("number")).build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            context.assertTrue(reply.succeeded());
+            context.assertEquals(Product.builder().id("1").number("123").build(), reply.result().body().getProduct());
+            async.complete();
+        });
+    }
+
+    @Test
+    public void registerConsumer_getProductByNumber_success(TestContext context) {
+        // GIVEN consumer is registered, and a GET_PRODUCT_BY_NUMBER command is sent
+        // WHEN the message comes down the pipe
+        // THEN The mongo-client .findOne will be called with the number as the query
+        // AND the reply will hold the product
+
+        Async async = context.async();
+
+        when(mongoClient.findOne(anyString(), eq(new JsonObject().put("number", "123")), eq(null), any()))
+                .thenAnswer(invocationOnMock -> {
+                    Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+                    asyncResultHandler.handle(Future.succeededFuture(new JsonObject()
+                            .put("_id", "1").put("number", "123").put("description", "Some id")));
+                    return null;
+                });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT_BY_NUMBER).number("123").build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            context.assertTrue(reply.succeeded());
+            context.assertEquals(Product.builder().id("1").number("123").description("Some id").build(),
+                    reply.result().body().getProduct());
+            async.complete();
+        });
+    }
+
+    @Test
+    public void registerConsumer_getProductByNumber_not_found(TestContext context) {
+        // GIVEN consumer is registered, and a GET_PRODUCT_BY_NUMBER command is sent for a number no product has
+        // WHEN the message comes down the pipe
+        // THEN The mongo-client .findOne will find nothing
+        // AND the reply will be a not found error
+
+        Async async = context.async();
+
+        when(mongoClient.findOne(anyString(), eq(new JsonObject().put("number", "404")), eq(null), any()))
+                .thenAnswer(invocationOnMock -> {
+                    Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+                    asyncResultHandler.handle(Future.succeededFuture(null));
+                    return null;
+                });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT_BY_NUMBER).number("404").build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            context.assertTrue(reply.succeeded());
+            context.assertTrue(reply.result().body().isNotFound());
+            context.assertEquals("No product with number 404", reply.result().body().getError());
+            async.complete();
+        });
+    }
+
+    @Test
+    public void registerConsumer_getProduct_concurrent_reads_coalesced(TestContext context) {
+        // GIVEN consumer is registered, and two GET_PRODUCT calls for the same id are made
+        // AND the first database read has not finished when the second call arrives
+        // WHEN the database read completes
+        // THEN The mongo-client .findOne will have been called only once
+        // AND both replies will have the product in them
+
+        Async async = context.async(2);
+
+        List<Handler<AsyncResult<JsonObject>>> pendingReads = new ArrayList<>();
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(null), any())).thenAnswer(invocationOnMock -> {
+            pendingReads.add(invocationOnMock.getArgument(3));
+            return null;
+        });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+        for (int i = 0; i < 2; i++) {
+            vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+                context.assertEquals("123", reply.result().body().getProduct().getNumber());
+                verify(mongoClient, times(1)).findOne(anyString(), any(JsonObject.class), eq(null), any());
+                async.countDown();
+            });
+        }
+        vertx.setTimer(50, timer -> pendingReads.get(0).handle(Future.succeededFuture(new JsonObject()
+                .put("_id", "1").put("number", "123").put("description", "Some id"))));
+    }
+
+    @Test
+    public void registerConsumer_getProduct_shared_cache_hit(TestContext context) {
+        // GIVEN consumer is registered with the shared cache enabled
+        // AND a product has already been read once
+        // WHEN the same product is requested again
+        // THEN The mongo-client .findOne will only have been called once
+        // AND both replies will have the product in them
+
+        Async async = context.async();
+
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(null), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+            asyncResultHandler.handle(Future.succeededFuture(new JsonObject()
+                    .put("_id", "1").put("number", "123").put("description", "Some id")));
+            return null;
+        });
+
+        testClass = new MongoManager(mongoClient, new JsonObject().put("mongodb.cache.enabled", true));
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, first -> {
+            context.assertEquals("123", first.result().body().getProduct().getNumber());
+            // the cache write is asynchronous, give it a moment
+            vertx.setTimer(50, timer -> vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, second -> {
+                context.assertEquals("123", second.result().body().getProduct().getNumber());
+                verify(mongoClient, times(1)).findOne(anyString(), any(JsonObject.class), eq(null), any());
+                async.complete();
+            }));
+        });
+    }
+
+    @Test
+    public void registerConsumer_getProduct_read_racing_update_not_cached(TestContext context) {
+        // GIVEN consumer is registered with the shared cache enabled
+        // AND a GET_PRODUCT read has started but not finished
+        // WHEN the product is updated, and only then the read returns the old document
+        // THEN the old document is not cached over the update
+        // AND the next read gets the updated product from the cache
+
+        Async async = context.async();
+
+        List<Handler<AsyncResult<JsonObject>>> pendingReads = new ArrayList<>();
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(null), any())).thenAnswer(invocationOnMock -> {
+            pendingReads.add(invocationOnMock.getArgument(3));
+            return null;
+        });
+        when(mongoClient.replaceDocuments(anyString(), any(JsonObject.class), any(JsonObject.class), any()))
+                .thenAnswer(invocationOnMock -> {
+                    Handler<AsyncResult<MongoClientUpdateResult>> asyncResultHandler = invocationOnMock.getArgument(3);
+                    asyncResultHandler.handle(Future.succeededFuture(new MongoClientUpdateResult(1, null, 1)));
+                    return null;
+                });
+
+        testClass = new MongoManager(mongoClient, new JsonObject().put("mongodb.cache.enabled", true));
+        testClass.registerConsumer(vertx);
+
+        ProductCommand read = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+        ProductCommand update = ProductCommand.builder().cmd(UPDATE_PRODUCT).id("1")
+                .value(Product.builder().number("456").description("Updated").build()).build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, read, first -> {
+            context.assertEquals("123", first.result().body().getProduct().getNumber());
+            // the cache writes are asynchronous, give them a moment
+            vertx.setTimer(50, timer -> vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, read, second -> {
+                context.assertEquals("456", second.result().body().getProduct().getNumber());
+                verify(mongoClient, times(1)).findOne(anyString(), any(JsonObject.class), eq(null), any());
+                async.complete();
+            }));
+        });
+        vertx.setTimer(50, started -> vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, update, updated -> {
+            context.assertEquals("456", updated.result().body().getProduct().getNumber());
+            pendingReads.get(0).handle(Future.succeededFuture(new JsonObject()
+                    .put("_id", "1").put("number", "123").put("description", "Some id")));
+        }));
+    }
+
+    @Test
+    public void registerConsumer_getProduct_not_found(TestContext context) {
+        // GIVEN consumer is registered, and a GET_PRODUCT command is sent for an id no product has
+        // WHEN the message comes down the pipe
+        // THEN The mongo-client .findOne will find nothing
+        // AND the reply will be a not found error
+
+        Async async = context.async();
+
+        when(mongoClient.findOne(anyString(), eq(new JsonObject().put("_id", "404")), eq(null), any()))
+                .thenAnswer(invocationOnMock -> {
+                    Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+                    asyncResultHandler.handle(Future.succeededFuture(null));
+                    return null;
+                });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("404").build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            context.assertTrue(reply.succeeded());
+            context.assertTrue(reply.result().body().isNotFound());
+            context.assertEquals("No product with id 404", reply.result().body().getError());
+            async.complete();
+        });
+    }
+
     @Test
     public void registerConsumer_getProduct_failed_no_product(TestContext context) {
         // GIVEN consumer is registered, and a GET_PRODUCT call is made
@@ -828,4 +1243,219 @@ public class MongoManagerTest {
             }
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void registerConsumer_getProduct_breaker_open_serves_last_known_copy(TestContext context) {
+        // GIVEN consumer is registered with the circuit breaker enabled, opening after one failure
+        // AND a product has been read once, after which the database fails
+        // WHEN the product is requested twice more
+        // THEN both replies carry the last known copy, flagged stale
+        // AND the open breaker keeps the third request from reaching the database
+
+        Async async = context.async();
+
+        AtomicInteger calls = new AtomicInteger();
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(null), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+            asyncResultHandler.handle(calls.getAndIncrement() == 0
+                    ? Future.succeededFuture(new JsonObject().put("_id", "1").put("number", "123").put("description", "Some id"))
+                    : Future.failedFuture("connection refused"));
+            return null;
+        });
+
+        testClass = new MongoManager(mongoClient, new JsonObject()
+                .put("mongodb.breaker.enabled", true)
+                .put("mongodb.breaker.maxFailures", 1));
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, first -> {
+            context.assertFalse(first.result().body().isStale());
+            vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, second -> {
+                context.assertTrue(second.result().body().isStale());
+                vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, third -> {
+                    context.assertTrue(third.result().body().isStale());
+                    context.assertEquals("123", third.result().body().getProduct().getNumber());
+                    verify(mongoClient, times(2)).findOne(anyString(), any(JsonObject.class), eq(null), any());
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void registerConsumer_updateProduct_breaker_open_keeps_last_known_copy(TestContext context) {
+        // GIVEN consumer is registered with the circuit breaker enabled, opening after one failure
+        // AND a product has been read once, after which a read failure opens the breaker
+        // WHEN the product is updated
+        // THEN the update is refused as unavailable, without reaching the database
+        // AND the product is still served from the last known copy, flagged stale
+
+        Async async = context.async();
+
+        AtomicInteger calls = new AtomicInteger();
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(null), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+            asyncResultHandler.handle(calls.getAndIncrement() == 0
+                    ? Future.succeededFuture(new JsonObject().put("_id", "1").put("number", "123").put("description", "Some id"))
+                    : Future.failedFuture("connection refused"));
+            return null;
+        });
+
+        testClass = new MongoManager(mongoClient, new JsonObject()
+                .put("mongodb.breaker.enabled", true)
+                .put("mongodb.breaker.maxFailures", 1));
+        testClass.registerConsumer(vertx);
+
+        ProductCommand read = ProductCommand.builder().cmd(GET_PRODUCT).id("1").build();
+        ProductCommand update = ProductCommand.builder().cmd(UPDATE_PRODUCT).id("1")
+                .value(Product.builder().number("456").description("Updated").build()).build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, read, first ->
+                vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, read, failed -> {
+                    context.assertTrue(failed.result().body().isStale());
+                    vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, update, refused -> {
+                        context.assertTrue(refused.result().body().isUnavailable());
+                        verify(mongoClient, never()).replaceDocuments(anyString(), any(JsonObject.class),
+                                any(JsonObject.class), any());
+                        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, read, stale -> {
+                            context.assertTrue(stale.result().body().isStale());
+                            context.assertEquals("123", stale.result().body().getProduct().getNumber());
+                            async.complete();
+                        });
+                    });
+                }));
+    }
+
+    @Test
+    public void registerConsumer_createProduct_breaker_open_rejected(TestContext context) {
+        // GIVEN consumer is registered with the circuit breaker enabled, opening after one failure
+        // AND a save has failed
+        // WHEN another CREATE_PRODUCT call is made
+        // THEN the reply is flagged unavailable
+        // AND the mongo-client .save is not called again
+
+        Async async = context.async();
+
+        when(mongoClient.save(anyString(), any(JsonObject.class), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<String>> asyncResultHandler = invocationOnMock.getArgument(2);
+            asyncResultHandler.handle(Future.failedFuture("connection refused"));
+            return null;
+        });
+
+        testClass = new MongoManager(mongoClient, new JsonObject()
+                .put("mongodb.breaker.enabled", true)
+                .put("mongodb.breaker.maxFailures", 1));
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(CREATE_PRODUCT)
+                .value(Product.builder().number("123").description("Some product").build()).build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, first -> {
+            context.assertTrue(first.result().body().failed());
+            context.assertFalse(first.result().body().isUnavailable());
+            vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, second -> {
+                context.assertTrue(second.result().body().isUnavailable());
+                verify(mongoClient, times(1)).save(anyString(), any(JsonObject.class), any());
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void registerConsumer_records_command_and_mongo_call_timings(TestContext context) {
+        // GIVEN consumer is registered, and metrics go to a simple registry
+        // AND the database read fails
+        // WHEN a GET_PRODUCT call is made
+        // THEN the command time is recorded with an error outcome
+        // AND the findOne call time and error count are recorded
+
+        Async async = context.async();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+
+        when(mongoClient.findOne(anyString(), any(JsonObject.class), eq(null), any())).thenAnswer(invocationOnMock -> {
+            Handler<AsyncResult<JsonObject>> asyncResultHandler = invocationOnMock.getArgument(3);
+            asyncResultHandler.handle(Future.failedFuture("boom"));
+            return null;
+        });
+
+        testClass.registerConsumer(vertx);
+
+        ProductCommand command = ProductCommand.builder().cmd(GET_PRODUCT).id("metrics-1").build();
+        vertx.eventBus().<ProductReply>request(VERTX_ADDRESS, command, reply -> {
+            try {
+                context.assertEquals(1L, registry.get("mongo.commands")
+                        .tags("cmd", GET_PRODUCT, "outcome", "error").timer().count());
+                context.assertEquals(1L, registry.get("mongo.calls")
+                        .tags("operation", "findOne", "outcome", "error").timer().count());
+                context.assertEquals(1.0, registry.get("mongo.calls.errors")
+                        .tags("operation", "findOne").counter().count());
+            } finally {
+                Metrics.removeRegistry(registry);
+                async.complete();
+            }
+        });
+    }
+
+    /**
+     * Minimal stand-in for the mongo cursor stream, honouring pause/resume.
+     */
+    private static class ListReadStream implements ReadStream<JsonObject> {
+        private final Iterator<JsonObject> iterator;
+        private Handler<JsonObject> handler;
+        private Handler<Void> endHandler;
+        private boolean paused;
+
+        private ListReadStream(List<JsonObject> documents) {
+            this.iterator = documents.iterator();
+        }
+
+        @Override
+        public ReadStream<JsonObject> exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> handler(Handler<JsonObject> handler) {
+            this.handler = handler;
+            if (handler != null) {
+                Vertx.currentContext().runOnContext(v -> drain());
+            }
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> resume() {
+            paused = false;
+            Vertx.currentContext().runOnContext(v -> drain());
+            return this;
+        }
+
+        @Override
+        public ReadStream<JsonObject> fetch(long amount) {
+            return resume();
+        }
+
+        @Override
+        public ReadStream<JsonObject> endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+
+        private void drain() {
+            while (!paused && handler != null && iterator.hasNext()) {
+                handler.handle(iterator.next());
+            }
+            if (!paused && handler != null && endHandler != null) {
+                endHandler.handle(null);
+                endHandler = null;
+            }
+        }
+    }
+}
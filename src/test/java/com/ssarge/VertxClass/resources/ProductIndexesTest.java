@@ -0,0 +1,50 @@
+package com.ssarge.VertxClass.resources;
+
+import com.mongodb.MongoWriteException;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class ProductIndexesTest {
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void ensure_numbers_unique_when_present(TestContext context) {
+        // GIVEN the product indexes, ensured twice
+        // WHEN two products without a number and two with the same number are saved
+        // THEN only the second numbered product is refused, as a duplicate key
+
+        Async async = context.async();
+        InMemoryMongoClient mongoClient = new InMemoryMongoClient(rule.vertx(), new JsonObject());
+        JsonObject noNumber = new JsonObject().putNull("number").put("description", "none");
+        JsonObject numbered = new JsonObject().put("number", "123").put("description", "first");
+
+        Promise<Void> indexed = Promise.promise();
+        ProductIndexes.ensure(mongoClient, first -> ProductIndexes.ensure(mongoClient, indexed));
+        indexed.future().compose(v -> save(mongoClient, noNumber))
+                .compose(id -> save(mongoClient, noNumber))
+                .compose(id -> save(mongoClient, numbered))
+                .compose(id -> save(mongoClient, numbered.copy().put("description", "second")))
+                .setHandler(context.asyncAssertFailure(cause -> {
+                    context.assertTrue(cause instanceof MongoWriteException);
+                    context.assertEquals(11000, ((MongoWriteException) cause).getCode());
+                    async.complete();
+                }));
+    }
+
+    private static Future<String> save(InMemoryMongoClient mongoClient, JsonObject document) {
+        Promise<String> saved = Promise.promise();
+        mongoClient.save("products", document.copy(), saved);
+        return saved.future();
+    }
+}
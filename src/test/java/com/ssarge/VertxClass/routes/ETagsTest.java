@@ -0,0 +1,46 @@
+package com.ssarge.VertxClass.routes;
+
+import com.ssarge.VertxClass.entity.Product;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ETagsTest {
+
+    private final Product product = Product.builder().id("1").number("123").description("Some description").build();
+
+    @Test
+    public void of_same_content_same_tag() {
+        Product copy = Product.builder().id("1").number("123").description("Some description").build();
+
+        assertEquals(ETags.of(product), ETags.of(copy));
+    }
+
+    @Test
+    public void of_changed_content_changes_tag() {
+        Product changed = Product.builder().id("1").number("1234").description("Some description").build();
+        Product shifted = Product.builder().id("1").number("123S").description("ome description").build();
+
+        assertNotEquals(ETags.of(product), ETags.of(changed));
+        assertNotEquals(ETags.of(product), ETags.of(shifted));
+        assertNotEquals(ETags.of(Collections.singletonList(product), null),
+                ETags.of(Collections.singletonList(product), "/api/v1/products?limit=1&cursor=MQ"));
+    }
+
+    @Test
+    public void matches_handles_lists_weak_tags_and_wildcard() {
+        String etag = ETags.of(Arrays.asList(product, product), null);
+
+        assertTrue(ETags.matches("\"other\", " + etag, etag));
+        assertTrue(ETags.matches("W/" + etag, etag));
+        assertTrue(ETags.matches("*", etag));
+        assertFalse(ETags.matches("\"other\"", etag));
+        assertFalse(ETags.matches(null, etag));
+    }
+}
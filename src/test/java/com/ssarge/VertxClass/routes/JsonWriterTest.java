@@ -0,0 +1,66 @@
+package com.ssarge.VertxClass.routes;
+
+import com.ssarge.VertxClass.entity.Product;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonWriterTest {
+
+    private final Product product = Product.builder().id("1").number("123").description("Some \"quoted\" description").build();
+
+    @Test
+    public void product_is_compact_and_matches_mapped_json() {
+        // WHEN
+        Buffer buffer = JsonWriter.product(product, false);
+
+        // THEN
+        assertEquals(JsonObject.mapFrom(product).encode(), buffer.toString());
+    }
+
+    @Test
+    public void page_keeps_products_and_next() {
+        // GIVEN
+        Product noDescription = Product.builder().id("2").number("456").build();
+
+        // WHEN
+        JsonObject page = JsonWriter.page(Arrays.asList(product, noDescription), "/api/v1/products?cursor=Mg", false).toJsonObject();
+
+        // THEN
+        assertEquals(new JsonArray().add(JsonObject.mapFrom(product)).add(JsonObject.mapFrom(noDescription)),
+                page.getJsonArray("products"));
+        assertEquals("/api/v1/products?cursor=Mg", page.getString("next"));
+        assertTrue(page.getJsonArray("products").getJsonObject(1).containsKey("description"));
+    }
+
+    @Test
+    public void product_writes_only_selected_fields() {
+        // WHEN
+        JsonObject written = JsonWriter.product(product, false, Arrays.asList("number")).toJsonObject();
+
+        // THEN the id is always written
+        assertEquals(new JsonObject().put("id", "1").put("number", "123"), written);
+    }
+
+    @Test
+    public void pretty_only_changes_layout() {
+        // GIVEN
+        JsonObject error = new JsonObject().put("error", "boom");
+
+        // WHEN
+        String compact = JsonWriter.value(error, false).toString();
+        String pretty = JsonWriter.value(error, true).toString();
+
+        // THEN
+        assertFalse(compact.contains("\n"));
+        assertTrue(pretty.contains("\n"));
+        assertEquals(new JsonObject(compact), new JsonObject(pretty));
+    }
+}
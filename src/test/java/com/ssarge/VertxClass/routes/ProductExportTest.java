@@ -0,0 +1,183 @@
+package com.ssarge.VertxClass.routes;
+
+import com.ssarge.VertxClass.messages.ProductCommand;
+import com.ssarge.VertxClass.resources.InMemoryMongoClient;
+import com.ssarge.VertxClass.resources.MongoManager;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.Router;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.ssarge.VertxClass.AppConstants.STREAM_NEXT;
+
+/**
+ * GET /api/v1/products/_export through the product router, with the mongo service backed by InMemoryMongoClient.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ProductExportTest {
+
+    private static final String EXPORT = "/api/v1/products/_export";
+    private static final String NDJSON = "application/x-ndjson";
+    // small socket buffers, so a client that stops reading soon fills the server's write queue
+    private static final int SOCKET_BUFFER = 8 * 1024;
+
+    @Rule
+    public RunTestOnContext rule = new RunTestOnContext();
+
+    private Vertx vertx;
+    private InMemoryMongoClient mongoClient;
+    private HttpClient client;
+    private int port;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = rule.vertx();
+        JsonObject config = new JsonObject().put("mongodb.stream.batchSize", 100);
+        mongoClient = new InMemoryMongoClient(vertx, config);
+        new MongoManager(mongoClient, config).registerConsumer(vertx);
+
+        Router router = Router.router(vertx);
+        router.mountSubRouter("/api/", new ProductRouteHandler(vertx, config).initializeRouter());
+        client = vertx.createHttpClient(new HttpClientOptions().setReceiveBufferSize(SOCKET_BUFFER));
+        vertx.createHttpServer(new HttpServerOptions().setSendBufferSize(SOCKET_BUFFER))
+                .requestHandler(router)
+                .listen(0, context.asyncAssertSuccess(server -> port = server.actualPort()));
+    }
+
+    private void seed(TestContext context, int count, int descriptionLength, Handler<Void> next) {
+        String padding = String.join("", Collections.nCopies(descriptionLength, "x"));
+        List<BulkOperation> inserts = IntStream.range(0, count)
+                .mapToObj(i -> BulkOperation.createInsert(new JsonObject()
+                        .put("_id", String.format("id%05d", i))
+                        .put("number", String.valueOf(i))
+                        .put("description", "Product " + i + padding)))
+                .collect(Collectors.toList());
+        if (inserts.isEmpty()) {
+            next.handle(null);
+            return;
+        }
+        mongoClient.bulkWrite("products", inserts, context.asyncAssertSuccess(written -> next.handle(null)));
+    }
+
+    private void export(TestContext context, String uri, Handler<HttpClientResponse> handler) {
+        client.getNow(port, "localhost", uri, handler);
+    }
+
+    private static List<JsonObject> lines(Buffer body) {
+        return Arrays.stream(body.toString().split("\n"))
+                .map(JsonObject::new)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void export_writes_one_product_per_line(TestContext context) {
+        // GIVEN three products
+        // WHEN they are exported
+        // THEN the body is ndjson, one product per line, each line ending with a newline
+
+        Async async = context.async();
+        seed(context, 3, 0, seeded -> export(context, EXPORT, response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertEquals(NDJSON, response.getHeader(HttpHeaders.CONTENT_TYPE));
+            response.bodyHandler(body -> {
+                context.assertTrue(body.toString().endsWith("}\n"));
+                List<JsonObject> products = lines(body);
+                context.assertEquals(3, products.size());
+                context.assertEquals(new JsonObject().put("id", "id00001").put("number", "1")
+                        .put("description", "Product 1"), products.get(1));
+                async.complete();
+            });
+        }));
+    }
+
+    @Test
+    public void export_of_empty_collection_is_empty(TestContext context) {
+        // GIVEN no products
+        // WHEN they are exported
+        // THEN the body is empty, still typed as ndjson
+
+        Async async = context.async();
+        export(context, EXPORT, response -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertEquals(NDJSON, response.getHeader(HttpHeaders.CONTENT_TYPE));
+            response.bodyHandler(body -> {
+                context.assertEquals(0, body.length());
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void export_takes_fields(TestContext context) {
+        // GIVEN two products
+        // WHEN they are exported with ?fields=number
+        // THEN every line holds only the id and the number
+
+        Async async = context.async();
+        seed(context, 2, 0, seeded -> export(context, EXPORT + "?fields=number", response -> {
+            context.assertEquals(200, response.statusCode());
+            response.bodyHandler(body -> {
+                context.assertEquals(Arrays.asList(
+                        new JsonObject().put("id", "id00000").put("number", "0"),
+                        new JsonObject().put("id", "id00001").put("number", "1")), lines(body));
+                async.complete();
+            });
+        }));
+    }
+
+    @Test
+    public void export_to_paused_client_waits_for_it(TestContext context) {
+        // GIVEN a few megabytes of products, read from the database in batches of 100
+        // WHEN the client stops reading as soon as the export starts, and resumes a while later
+        // THEN only the few batches that fit the server's write queue are read while it is paused
+        // AND once resumed the client gets every product
+
+        Async async = context.async();
+        int count = 5000;
+        AtomicInteger batchesRequested = new AtomicInteger();
+        vertx.eventBus().addOutboundInterceptor(delivery -> {
+            Object body = delivery.message().body();
+            if (body instanceof ProductCommand && STREAM_NEXT.equals(((ProductCommand) body).getCmd())) {
+                batchesRequested.incrementAndGet();
+            }
+            delivery.next();
+        });
+
+        seed(context, count, 1000, seeded -> export(context, EXPORT, response -> {
+            Buffer body = Buffer.buffer();
+            response.pause();
+            response.handler(body::appendBuffer);
+            response.endHandler(done -> {
+                context.assertEquals(count, lines(body).size());
+                async.complete();
+            });
+            vertx.setTimer(500, paused -> {
+                context.assertTrue(batchesRequested.get() < 10,
+                        batchesRequested.get() + " batches read while the client was paused");
+                response.resume();
+            });
+        }));
+    }
+}
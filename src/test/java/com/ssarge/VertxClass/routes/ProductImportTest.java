@@ -0,0 +1,163 @@
+package com.ssarge.VertxClass.routes;
+
+import com.ssarge.VertxClass.entity.Product;
+import com.ssarge.VertxClass.messages.ItemResult;
+import com.ssarge.VertxClass.messages.ProductCommand;
+import com.ssarge.VertxClass.messages.ProductReply;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProductImportTest {
+
+    private final Upload upload = new Upload();
+    private final List<ProductCommand> sent = new ArrayList<>();
+    private final List<Handler<AsyncResult<Message<ProductReply>>>> replies = new ArrayList<>();
+    private final List<JsonObject> reports = new ArrayList<>();
+    private AsyncResult<JsonObject> done;
+
+    private ProductImport productImport(int batchSize) {
+        ProductImport productImport = new ProductImport(upload, batchSize, 1024, 10, (command, reply) -> {
+            sent.add(command);
+            replies.add(reply);
+        });
+        productImport.reportHandler(reports::add).start(result -> done = result);
+        return productImport;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AsyncResult<Message<ProductReply>> reply(ProductReply body) {
+        Message<ProductReply> message = mock(Message.class);
+        when(message.body()).thenReturn(body);
+        return Future.succeededFuture(message);
+    }
+
+    private static ProductReply allInserted(int count) {
+        return ProductReply.ofResults(IntStream.range(0, count)
+                .mapToObj(i -> ItemResult.ok(i, "id" + i))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void batches_lines_pausing_the_upload_while_in_flight() {
+        // GIVEN an import with batches of two
+        productImport(2);
+
+        // WHEN three products, a malformed line and a blank line arrive, the last line without a newline
+        upload.send("{\"number\":\"1\"}\nnot json\n\n{\"number\":\"2\"}\n{\"number\":\"3\"}");
+
+        // THEN the first two products are sent while the upload waits
+        assertEquals(1, sent.size());
+        assertEquals(Arrays.asList("1", "2"), sent.get(0).getValues().stream()
+                .map(Product::getNumber).collect(Collectors.toList()));
+        assertTrue(upload.paused);
+        assertEquals(new JsonObject().put("line", 2).put("error", "Malformed product"), reports.get(0));
+
+        // WHEN the first batch is stored, the second item refused
+        replies.get(0).handle(reply(ProductReply.ofResults(Arrays.asList(
+                ItemResult.ok(0, "a"), ItemResult.failed(1, "duplicate key")))));
+
+        // THEN reading resumes, with the refused line and the progress reported
+        assertFalse(upload.paused);
+        assertEquals(new JsonObject().put("line", 4).put("error", "duplicate key"), reports.get(1));
+        assertEquals(new JsonObject().put("lines", 4).put("inserted", 1).put("failed", 2),
+                reports.get(2).getJsonObject("progress"));
+
+        // WHEN the upload ends and the last product is stored
+        upload.end();
+        assertEquals(2, sent.size());
+        assertNull(done);
+        replies.get(1).handle(reply(allInserted(1)));
+
+        // THEN the import completes with the totals
+        assertTrue(done.succeeded());
+        assertEquals(new JsonObject().put("lines", 5).put("inserted", 2).put("failed", 2), done.result());
+    }
+
+    @Test
+    public void failed_batch_stops_the_import() {
+        // GIVEN an import with batches of one, and its first product stored
+        ProductImport productImport = productImport(1);
+        upload.send("{\"number\":\"1\"}\n");
+        replies.get(0).handle(reply(allInserted(1)));
+
+        // WHEN the next batch cannot be sent
+        upload.send("{\"number\":\"2\"}\n{\"number\":\"3\"}\n");
+        replies.get(1).handle(Future.failedFuture("timed out"));
+
+        // THEN the import fails, accounted up to the first line, and reads no further
+        assertTrue(done.failed());
+        assertEquals(1, productImport.getLines());
+        assertEquals(2, sent.size());
+    }
+
+    /**
+     * An upload driven by the test, remembering whether it was paused.
+     */
+    private static final class Upload implements ReadStream<Buffer> {
+        private Handler<Buffer> handler;
+        private Handler<Void> endHandler;
+        private boolean paused;
+
+        void send(String data) {
+            handler.handle(Buffer.buffer(data));
+        }
+
+        void end() {
+            endHandler.handle(null);
+        }
+
+        @Override
+        public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> pause() {
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> resume() {
+            paused = false;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> fetch(long amount) {
+            paused = false;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.ssarge.VertxClass.templates;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TemplateTest {
+
+    @Test
+    public void render_replaces_every_token() {
+        // GIVEN
+        Template template = Template.compile("<h3>{name}</h3><p>{name} is {age}</p>");
+        Map<String, String> values = new HashMap<>();
+        values.put("name", "Bubba");
+        values.put("age", "42");
+
+        // WHEN
+        String html = template.render(values).toString();
+
+        // THEN
+        assertEquals("<h3>Bubba</h3><p>Bubba is 42</p>", html);
+    }
+
+    @Test
+    public void render_keeps_unknown_tokens_and_plain_braces() {
+        // GIVEN
+        Template template = Template.compile("<style>h1 { color: red }</style>{missing}{}{name");
+
+        // WHEN
+        String html = template.render(Collections.emptyMap()).toString();
+
+        // THEN
+        assertEquals("<style>h1 { color: red }</style>{missing}{}{name", html);
+    }
+
+    @Test
+    public void render_handles_values_containing_tokens_and_multibyte_text() {
+        // GIVEN
+        Template template = Template.compile("Grüße {name}!");
+
+        // WHEN
+        String html = template.render(Collections.singletonMap("name", "{name} Zoë")).toString();
+
+        // THEN
+        assertEquals("Grüße {name} Zoë!", html);
+    }
+}
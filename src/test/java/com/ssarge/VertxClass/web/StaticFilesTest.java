@@ -0,0 +1,39 @@
+package com.ssarge.VertxClass.web;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StaticFilesTest {
+
+    private final Vertx vertx = Vertx.vertx();
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void maxAge_uses_longest_matching_prefix() {
+        // GIVEN
+        JsonObject config = new JsonObject()
+                .put("http.static.maxAgeSeconds", 60)
+                .put("http.static.maxAge", new JsonObject()
+                        .put("/assets/", 31536000)
+                        .put("/assets/app/", 600)
+                        .put("/index.html", 0));
+
+        // WHEN
+        StaticFiles staticFiles = new StaticFiles(vertx, config);
+
+        // THEN
+        assertEquals(600, staticFiles.maxAge("/assets/app/main.js"));
+        assertEquals(31536000, staticFiles.maxAge("/assets/apple.png"));
+        assertEquals(0, staticFiles.maxAge("/index.html"));
+        assertEquals(60, staticFiles.maxAge("/yo.html"));
+        assertEquals(60, staticFiles.maxAge("/"));
+    }
+}